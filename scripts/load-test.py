@@ -0,0 +1,76 @@
+#!/usr/bin/env python3
+"""Load test for a running instance: concurrent clients of one logged-in user.
+
+Every fourth client reads GET /api/me, the others add a minute to a MINUTES task.
+Prints the request rate and the median and 99th percentile latency.
+
+    python3 scripts/load-test.py --clients 64 --requests 200
+"""
+import argparse
+import http.client
+import threading
+import time
+import urllib.parse
+
+
+def login(host, port, user, password):
+    conn = http.client.HTTPConnection(host, port, timeout=30)
+    body = urllib.parse.urlencode({"username": user, "password": password})
+    conn.request("POST", "/login", body, {"Content-Type": "application/x-www-form-urlencoded"})
+    resp = conn.getresponse()
+    resp.read()
+    if "error" in (resp.getheader("Location") or ""):
+        raise SystemExit(f"login as {user} failed")
+    for name, value in resp.getheaders():
+        if name.lower() == "set-cookie" and value.startswith("JSESSIONID="):
+            return value.split(";", 1)[0]
+    raise SystemExit(f"login as {user} failed: HTTP {resp.status}")
+
+
+def main():
+    p = argparse.ArgumentParser()
+    p.add_argument("--host", default="localhost")
+    p.add_argument("--port", type=int, default=8084)
+    p.add_argument("--user", default="Anna")
+    p.add_argument("--password", default="rabota")
+    p.add_argument("--task", default="activity-1", help="id of a MINUTES daily task")
+    p.add_argument("--clients", type=int, default=64)
+    p.add_argument("--requests", type=int, default=200, help="requests per client")
+    args = p.parse_args()
+
+    headers = {"Cookie": login(args.host, args.port, args.user, args.password)}
+    add = f"/api/tasks/{urllib.parse.quote(args.task)}/add?minutes=1"
+    latencies, errors, lock = [], [0], threading.Lock()
+
+    def client(i):
+        conn = http.client.HTTPConnection(args.host, args.port, timeout=60)
+        for _ in range(args.requests):
+            started = time.perf_counter()
+            if i % 4 == 0:
+                conn.request("GET", "/api/me", headers=headers)
+            else:
+                conn.request("POST", add, headers=headers)
+            resp = conn.getresponse()
+            resp.read()
+            took = time.perf_counter() - started
+            with lock:
+                latencies.append(took)
+                if resp.status != 200:
+                    errors[0] += 1
+
+    threads = [threading.Thread(target=client, args=(i,)) for i in range(args.clients)]
+    started = time.perf_counter()
+    for t in threads:
+        t.start()
+    for t in threads:
+        t.join()
+    elapsed = time.perf_counter() - started
+
+    latencies.sort()
+    n = len(latencies)
+    print(f"clients={args.clients} requests={n} errors={errors[0]} rps={n / elapsed:.0f} "
+          f"p50={latencies[n // 2] * 1000:.1f}ms p99={latencies[int(n * 0.99)] * 1000:.1f}ms")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,34 @@
+package com.buseiny.app.config;
+
+import com.buseiny.app.util.SimulatedClock;
+import com.buseiny.app.util.TimeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * The clock all "now" and "today" come from, in {@code app.timezone}. With
+ * {@code app.clock.simulated: true} it is a {@link SimulatedClock} starting at {@code app.clock.start}
+ * (local date-time, default now) and running {@code app.clock.speed} times faster than real time.
+ */
+@Configuration
+@Slf4j
+public class ClockConfig {
+
+    @Bean
+    public Clock clock(@Value("${app.timezone}") String timezone,
+                       @Value("${app.clock.simulated:false}") boolean simulated,
+                       @Value("${app.clock.start:}") String start,
+                       @Value("${app.clock.speed:1}") double speed) {
+        var zone = TimeUtil.zone(timezone);
+        if (!simulated) return Clock.system(zone);
+        Instant from = start.isBlank() ? Instant.now() : LocalDateTime.parse(start).atZone(zone).toInstant();
+        log.warn("Running on simulated time from {} at {}x", from, speed);
+        return new SimulatedClock(from, speed, zone);
+    }
+}
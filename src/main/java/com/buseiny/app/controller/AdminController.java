@@ -3,13 +3,17 @@ package com.buseiny.app.controller;
 import com.buseiny.app.model.DailyTaskDef;
 import com.buseiny.app.model.OneTimeGoal;
 import com.buseiny.app.model.ShopItem;
+import com.buseiny.app.service.ClockService;
 import com.buseiny.app.service.StateService;
 import com.buseiny.app.service.HistoryService;
 import com.buseiny.app.dto.AdminDayUpsertNewRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -19,7 +23,12 @@ public class AdminController {
 
     private final StateService state;
     private final HistoryService history;
-    public AdminController(StateService state, HistoryService history){ this.state = state; this.history = history; }
+    private final ClockService clock;
+    public AdminController(StateService state, HistoryService history, ClockService clock){
+        this.state = state;
+        this.history = history;
+        this.clock = clock;
+    }
 
     @PostMapping("/shop")
     public ResponseEntity<?> setShop(@RequestBody List<ShopItem> items) throws IOException {
@@ -67,6 +76,43 @@ public class AdminController {
         return ResponseEntity.ok(result);
     }
 
+    // Edit several days and recalculate once
+    @PostMapping("/days/upsert")
+    public ResponseEntity<?> upsertDays(@RequestBody List<AdminDayUpsertNewRequest> reqs) throws Exception {
+        return ResponseEntity.ok(history.adminUpsertDaysAndRecalc(reqs));
+    }
+
+    // Balance against the ledger
+    @GetMapping("/ledger/check")
+    public ResponseEntity<?> checkLedger() throws IOException {
+        return ResponseEntity.ok(history.checkLedger());
+    }
+
+    @GetMapping("/history/cache")
+    public ResponseEntity<?> historyCache() {
+        return ResponseEntity.ok(history.cacheStats());
+    }
+
+    // Move simulated time forward (app.clock.simulated) and roll over the days passed
+    @PostMapping("/clock/advance")
+    public ResponseEntity<?> advanceClock(@RequestParam(value = "days", defaultValue = "0") int days,
+                                          @RequestParam(value = "hours", defaultValue = "0") int hours) throws IOException {
+        if (!clock.isSimulated()) return ResponseEntity.badRequest().body("clock is not simulated");
+        if (days < 0 || hours < 0) return ResponseEntity.badRequest().body("time only moves forward");
+        var now = clock.advance(Duration.ofDays(days).plusHours(hours));
+        state.processDayBoundaries();
+        return ResponseEntity.ok(Map.of("now", now.toString()));
+    }
+
+    // Full state as app-state.json; import it by placing it at app.dataFile with an empty state dir
+    @GetMapping("/export")
+    public ResponseEntity<byte[]> export() throws IOException {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"app-state.json\"")
+                .body(state.exportState());
+    }
+
     // Gifts
     public record GiftRequest(String title, int amount) {}
 
@@ -2,12 +2,14 @@ package com.buseiny.app.controller;
 
 import com.buseiny.app.service.StateService;
 import com.buseiny.app.service.DailyTaskService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.util.Map;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import com.buseiny.app.model.Purchase;
 
 @RestController
@@ -22,10 +24,10 @@ public class ApiController {
         this.daily = daily;
     }
 
+    // serialized once per state version, see StateService.statusJson()
     @GetMapping("/me")
-    public ResponseEntity<Map<String, Object>> me() throws IOException {
-        Map<String,Object> status = state.status();
-        return ResponseEntity.ok(status);
+    public ResponseEntity<byte[]> me() throws IOException {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(state.statusJson());
     }
 
     // --- Daily tasks (legacy endpoints kept) ---
@@ -33,40 +35,42 @@ public class ApiController {
 
     // generic daily (unified id)
     @PostMapping("/tasks/generic/{id}/check")
-    public ResponseEntity<?> checkGeneric(@PathVariable("id") String id) throws IOException {
-        daily.checkGenericTask(id);
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> checkGeneric(@PathVariable("id") String id,
+            @RequestParam(value = "since", required = false) Long since) {
+        return daily.checkGenericTask(id).thenApply(v -> statusResponse(since));
     }
 
     // Unified: add minutes to a minutes-type task
     @PostMapping("/tasks/{id}/add")
-    public ResponseEntity<?> addMinutesGeneric(@PathVariable("id") String id, @RequestParam("minutes") int minutes) throws IOException {
-        if (minutes <= 0) return ResponseEntity.badRequest().body("minutes must be > 0");
-        daily.addMinutesByTaskId(id, minutes);
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> addMinutesGeneric(@PathVariable("id") String id, @RequestParam("minutes") int minutes,
+            @RequestParam(value = "since", required = false) Long since) {
+        if (minutes <= 0) return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("minutes must be > 0"));
+        return daily.addMinutesByTaskId(id, minutes).thenApply(v -> statusResponse(since));
     }
 
     // Unified: check a check-type task
     @PostMapping("/tasks/{id}/check")
-    public ResponseEntity<?> checkGenericUnified(@PathVariable("id") String id) throws IOException {
-        daily.checkGenericTask(id);
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> checkGenericUnified(@PathVariable("id") String id,
+            @RequestParam(value = "since", required = false) Long since) {
+        return daily.checkGenericTask(id).thenApply(v -> statusResponse(since));
     }
 
     // --- One-time goals ---
     @PostMapping("/goals/{id}/complete")
-    public ResponseEntity<?> completeGoal(@PathVariable("id") String id) throws IOException {
-        boolean ok = state.completeGoal(id);
-        if (!ok) return ResponseEntity.badRequest().body("already completed or not found");
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> completeGoal(@PathVariable("id") String id,
+            @RequestParam(value = "since", required = false) Long since) {
+        return state.completeGoal(id).thenApply(ok -> ok
+                ? statusResponse(since)
+                : ResponseEntity.badRequest().body("already completed or not found"));
     }
 
     // --- Shop ---
     @PostMapping("/shop/{id}/purchase")
-    public ResponseEntity<?> purchase(@PathVariable("id") String id) throws IOException {
-        boolean ok = state.purchase(id);
-        if (!ok) return ResponseEntity.badRequest().body("not enough balance or not found");
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> purchase(@PathVariable("id") String id,
+            @RequestParam(value = "since", required = false) Long since) {
+        return state.purchase(id).thenApply(ok -> ok
+                ? statusResponse(since)
+                : ResponseEntity.badRequest().body("not enough balance or not found"));
     }
 
     @GetMapping("/purchases")
@@ -76,9 +80,27 @@ public class ApiController {
 
     // --- Gifts ---
     @PostMapping("/gifts/{id}/accept")
-    public ResponseEntity<?> acceptGift(@PathVariable("id") String id) throws IOException {
-        boolean ok = state.acceptGift(id);
-        if (!ok) return ResponseEntity.badRequest().body("not found");
-        return ResponseEntity.ok(state.status());
+    public CompletableFuture<ResponseEntity<?>> acceptGift(@PathVariable("id") String id,
+            @RequestParam(value = "since", required = false) Long since) {
+        return state.acceptGift(id).thenApply(ok -> ok
+                ? statusResponse(since)
+                : ResponseEntity.badRequest().body("not found"));
+    }
+
+    /*
+     * Status after a mutation; runs on the executor that completed it, not a request thread.
+     * With ?since=<version> from a previous status, only the changes since that version are sent
+     * (StatusDeltaDTO), unless that version is too old or the change needs the full status.
+     */
+    private ResponseEntity<?> statusResponse(Long since) {
+        try {
+            if (since != null) {
+                var delta = state.statusDelta(since);
+                if (delta != null) return ResponseEntity.ok(delta);
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(state.statusJson());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -2,15 +2,21 @@ package com.buseiny.app.controller;
 
 import com.buseiny.app.dto.HistoryDTO;
 import com.buseiny.app.service.HistoryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/api/history")
 public class HistoryController {
     private final HistoryService history;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
     public HistoryController(HistoryService history){ this.history = history; }
 
     @GetMapping("/month")
@@ -23,4 +29,41 @@ public class HistoryController {
     public ResponseEntity<HistoryDTO.DayHistory> day( @RequestParam("date") String date) throws IOException {
         return ResponseEntity.ok(history.computeDayHistory(date));
     }
+
+    @GetMapping("/balance")
+    public ResponseEntity<HistoryDTO.AsOf> balance(@RequestParam("date") String date) throws IOException {
+        return ResponseEntity.ok(history.computeAsOf(date));
+    }
+
+    /**
+     * Days {@code from}..{@code to} as NDJSON, streamed while they are worked out. With {@code limit},
+     * at most that many days starting at {@code cursor} (default {@code from}) are sent, and the
+     * {@code X-Next-Cursor} header names the day to continue from if any are left.
+     */
+    @GetMapping("/range")
+    public ResponseEntity<StreamingResponseBody> range(@RequestParam("from") String from, @RequestParam("to") String to,
+                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                   @RequestParam(value = "limit", required = false) Integer limit) {
+        LocalDate first = LocalDate.parse(from);
+        LocalDate last = LocalDate.parse(to);
+        if (last.isBefore(first)) throw badRequest("to is before from");
+        LocalDate start = cursor == null ? first : LocalDate.parse(cursor);
+        if (start.isBefore(first) || start.isAfter(last)) throw badRequest("cursor outside the range");
+        if (limit != null && limit <= 0) throw badRequest("limit must be > 0");
+
+        LocalDate end = last;
+        var response = ResponseEntity.ok().contentType(NDJSON);
+        if (limit != null && start.plusDays(limit - 1).isBefore(last)) {
+            end = start.plusDays(limit - 1);
+            response.header("X-Next-Cursor", end.plusDays(1).toString());
+        }
+        LocalDate pageEnd = end;
+        StreamingResponseBody body = out -> history.writeRange(start, pageEnd, out);
+        return response.body(body);
+    }
+
+    // the body of a streamed response cannot be a message, so errors go through the status
+    private static ResponseStatusException badRequest(String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
 }
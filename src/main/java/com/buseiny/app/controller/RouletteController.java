@@ -5,6 +5,8 @@ import com.buseiny.app.service.RouletteService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/roulette")
 public class RouletteController {
@@ -17,7 +19,7 @@ public class RouletteController {
     }
 
     @PostMapping("/spin")
-    public ResponseEntity<RouletteDTO> spin() throws Exception {
-        return ResponseEntity.ok(roulette.spinRoulette());
+    public CompletableFuture<ResponseEntity<RouletteDTO>> spin() {
+        return roulette.spinRoulette().thenApply(ResponseEntity::ok);
     }
 }
@@ -9,4 +9,11 @@ public final class HistoryDTO {
     public record Item(String label, int points) {}
     public record DayHistory(String date, int total, List<Item> items) {}
     public record MonthHistory(int year, int month, List<DayHistory> days) {}
+    /** Balance next to the ledger opening balance plus every ledger entry; they match while the ledger is complete. */
+    public record LedgerCheck(int balance, int ledgerBalance) {}
+    /** Balance, streaks and progress of the date's week at the end of {@code date}. */
+    public record AsOf(String date, int balance, String weekStart, int weekMinutes, int weekGoalMinutes, List<TaskAsOf> tasks) {}
+    public record TaskAsOf(String id, String title, int streak, int weekMinutes, int weekDaysDone, int weekRequired) {}
+    /** Counters of the closed-period history cache since startup. */
+    public record CacheStats(int entries, int capacity, long hits, long misses, long evictions, long invalidations) {}
 }
@@ -0,0 +1,36 @@
+package com.buseiny.app.dto;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Writes a value by splicing in the JSON of the previous call when it is the same instance.
+ * Meant for immutable values shared between responses, such as lists that published state
+ * versions keep while they are unchanged. Spliced JSON is compact even in indented output.
+ */
+public class RawJsonCache extends JsonSerializer<Object> {
+
+    private record Entry(Object value, String json) {}
+
+    private volatile Entry last;
+
+    @Override
+    public void serialize(Object value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        var e = last;
+        if (e == null || e.value() != value) {
+            var out = new StringWriter();
+            var factory = gen.getCodec() != null ? gen.getCodec().getFactory() : new JsonFactory();
+            try (var g = factory.createGenerator(out)) {
+                provider.defaultSerializeValue(value, g);
+            }
+            e = new Entry(value, out.toString());
+            last = e;
+        }
+        gen.writeRawValue(e.json());
+    }
+}
@@ -1,11 +1,16 @@
 package com.buseiny.app.dto;
 
+import com.buseiny.app.model.Gift;
 import com.buseiny.app.model.OneTimeGoal;
-import com.buseiny.app.model.ShopItem;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Payload of {@code /api/me} as of state {@code version}. Goals and shop change rarely and keep
+ * their list instance between versions, so they are written through {@link RawJsonCache}.
+ */
 public record StatusDTO(
+        long version,
         String username,
         String avatarUrl,
         int balance,
@@ -13,9 +18,27 @@ public record StatusDTO(
         int weekGoalMinutes,
         long secondsUntilWeekEndEpoch,
         String currentWeekStart,
-        List<OneTimeGoal> goals,
-        List<ShopItem> shop,
-        List<Map<String,Object>> tasks,
+        @JsonSerialize(using = RawJsonCache.class) List<OneTimeGoal> goals,
+        @JsonSerialize(using = RawJsonCache.class) List<ShopItem> shop,
+        List<Task> tasks,
         List<WeeklyTaskDTO> weekDaily,
-        List<?> gifts
-) {}
+        List<Gift> gifts
+) {
+    /** Shop item with today's price after roulette discounts. */
+    public record ShopItem(String id, String title, int cost, int effectiveCost) {}
+
+    /** Daily task definition with today's progress. */
+    public record Task(
+            String id,
+            String title,
+            String kind,
+            int dailyReward,
+            Integer minutesPerDay,
+            Integer weeklyMinutesGoal,
+            boolean streakEnabled,
+            Integer weeklyRequiredCount,
+            int todayMinutes,
+            boolean todayDone,
+            int streak
+    ) {}
+}
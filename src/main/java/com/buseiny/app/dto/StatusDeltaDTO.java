@@ -0,0 +1,78 @@
+package com.buseiny.app.dto;
+
+import com.buseiny.app.model.Gift;
+import com.buseiny.app.model.OneTimeGoal;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Changes of the {@code /api/me} payload from version {@code since} to {@code version}.
+ * Fields that did not change are omitted; lists hold only the changed entries, matched by id.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StatusDeltaDTO(
+        long version,
+        long since,
+        Integer balance,
+        Integer weekMinutes,
+        Integer weekGoalMinutes,
+        List<StatusDTO.Task> tasks,
+        List<WeeklyTaskDTO> weekDaily,
+        List<StatusDTO.ShopItem> shop,
+        List<OneTimeGoal> goals,
+        List<Gift> giftsAdded,
+        List<String> giftsRemoved
+) {
+    /**
+     * Delta from {@code from} to {@code to}, or null if the change cannot be expressed as one:
+     * another week, another profile, or tasks, goals or shop items added, removed or reordered.
+     */
+    public static StatusDeltaDTO between(long since, StatusDTO from, long version, StatusDTO to) {
+        if (!Objects.equals(from.currentWeekStart(), to.currentWeekStart())
+                || !Objects.equals(from.username(), to.username())
+                || !Objects.equals(from.avatarUrl(), to.avatarUrl())
+                || !sameIds(from.tasks(), to.tasks(), StatusDTO.Task::id)
+                || !sameIds(from.weekDaily(), to.weekDaily(), WeeklyTaskDTO::id)
+                || !sameIds(from.shop(), to.shop(), StatusDTO.ShopItem::id)
+                || !sameIds(from.goals(), to.goals(), OneTimeGoal::id)) {
+            return null;
+        }
+        Set<String> before = new HashSet<>();
+        from.gifts().forEach(g -> before.add(g.id()));
+        Set<String> after = new HashSet<>();
+        to.gifts().forEach(g -> after.add(g.id()));
+        List<Gift> added = to.gifts().stream().filter(g -> !before.contains(g.id())).toList();
+        List<String> removed = from.gifts().stream().map(Gift::id).filter(id -> !after.contains(id)).toList();
+        return new StatusDeltaDTO(
+                version,
+                since,
+                from.balance() == to.balance() ? null : to.balance(),
+                from.weekMinutes() == to.weekMinutes() ? null : to.weekMinutes(),
+                from.weekGoalMinutes() == to.weekGoalMinutes() ? null : to.weekGoalMinutes(),
+                changed(from.tasks(), to.tasks()),
+                changed(from.weekDaily(), to.weekDaily()),
+                changed(from.shop(), to.shop()),
+                changed(from.goals(), to.goals()),
+                added.isEmpty() ? null : added,
+                removed.isEmpty() ? null : removed);
+    }
+
+    private static <T> boolean sameIds(List<T> a, List<T> b, Function<T, String> id) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!Objects.equals(id.apply(a.get(i)), id.apply(b.get(i)))) return false;
+        }
+        return true;
+    }
+
+    // entries of b that differ from the entry at the same position of a; lists have the same ids
+    private static <T> List<T> changed(List<T> a, List<T> b) {
+        if (a == b) return null;
+        List<T> out = new ArrayList<>();
+        for (int i = 0; i < b.size(); i++) {
+            if (!Objects.equals(a.get(i), b.get(i))) out.add(b.get(i));
+        }
+        return out.isEmpty() ? null : out;
+    }
+}
@@ -4,12 +4,18 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 @Data
 public class AppState {
     private LocalDateTime installedAt;
     private LocalDate lastProcessedWeekStart; // week start (Monday) in local zone
+    private long journalSeq; // last journal entry contained in this snapshot
 
     private UserState anna = new UserState();
 
@@ -17,4 +23,253 @@ public class AppState {
     private List<ShopItem> shop = new ArrayList<>();
     // Unified daily task definitions loaded from state file
     private List<DailyTaskDef> dailyTasks = new ArrayList<>();
+
+    // outcomes of closed weeks by week start (yyyy-MM-dd)
+    private Map<String, WeekSummary> weekSummaries = new TreeMap<>();
+
+    // balance the recalculation replay had at each week start (yyyy-MM-dd of the Monday), before
+    // the previous week's results; a recalculation resumes from the latest one before the change
+    private NavigableMap<String, Integer> replayCheckpoints = new TreeMap<>();
+
+    // id indexes of the lists above, rebuilt when a list is set or marked dirty; never serialized
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient Registry<OneTimeGoal> goalIndex = Registry.of(goals, OneTimeGoal::id);
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient Registry<ShopItem> shopIndex = Registry.of(shop, ShopItem::id);
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient Registry<DailyTaskDef> taskIndex = Registry.of(dailyTasks, DailyTaskDef::id);
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient DailyTaskDef weeklyGoalTask;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient WeekAggregates weeks = new WeekAggregates(this);
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient StreakCheckpoints streakCheckpoints = new StreakCheckpoints(this);
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient BalanceCheckpoints balanceCheckpoints = new BalanceCheckpoints();
+    // completed goals by completion date, built on first use
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient volatile Map<LocalDate, List<OneTimeGoal>> goalsByDate;
+
+    // sections changed since the last drainDirty(); never serialized
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final transient Set<StateSection> dirty = new LinkedHashSet<>();
+
+    public void setInstalledAt(LocalDateTime installedAt) {
+        this.installedAt = installedAt;
+        markDirty(StateSection.META);
+    }
+
+    public void setLastProcessedWeekStart(LocalDate lastProcessedWeekStart) {
+        this.lastProcessedWeekStart = lastProcessedWeekStart;
+        markDirty(StateSection.META);
+    }
+
+    public void setAnna(UserState anna) {
+        this.anna = anna;
+        weeks.clear();
+        streakCheckpoints.clear();
+    }
+
+    public void setWeekSummaries(Map<String, WeekSummary> weekSummaries) {
+        this.weekSummaries = new TreeMap<>(weekSummaries);
+        for (var key : weekSummaries.keySet()) markDirty(StateSection.week(LocalDate.parse(key)));
+    }
+
+    public void putWeekSummary(WeekSummary summary) {
+        weekSummaries.put(summary.weekStart().toString(), summary);
+        markDirty(StateSection.week(summary.weekStart()));
+    }
+
+    /** Outcome of the closed week starting {@code weekStart}, null if none was stored. */
+    public WeekSummary weekSummary(LocalDate weekStart) {
+        return weekSummaries.get(weekStart.toString());
+    }
+
+    public void setReplayCheckpoints(Map<String, Integer> replayCheckpoints) {
+        this.replayCheckpoints = new TreeMap<>(replayCheckpoints);
+        for (var key : replayCheckpoints.keySet()) markDirty(StateSection.checkpoint(LocalDate.parse(key)));
+    }
+
+    public void putReplayCheckpoint(LocalDate weekStart, int balance) {
+        replayCheckpoints.put(weekStart.toString(), balance);
+        markDirty(StateSection.checkpoint(weekStart));
+    }
+
+    /** Latest replay checkpoint at or before {@code date}, null if none. */
+    public Map.Entry<LocalDate, Integer> replayCheckpoint(LocalDate date) {
+        var e = replayCheckpoints.floorEntry(date.toString());
+        return e == null ? null : Map.entry(LocalDate.parse(e.getKey()), e.getValue());
+    }
+
+    /** Forgets every replay checkpoint, e.g. when tasks or goals are redefined. */
+    public void clearReplayCheckpoints() {
+        for (var key : replayCheckpoints.keySet()) markDirty(StateSection.checkpoint(LocalDate.parse(key)));
+        replayCheckpoints.clear();
+    }
+
+    public void setGoals(List<OneTimeGoal> goals) {
+        this.goals = goals;
+        this.goalIndex = Registry.of(goals, OneTimeGoal::id);
+        this.goalsByDate = null;
+        markDirty(StateSection.GOALS);
+    }
+
+    public void setShop(List<ShopItem> shop) {
+        this.shop = shop;
+        this.shopIndex = Registry.of(shop, ShopItem::id);
+        markDirty(StateSection.SHOP);
+    }
+
+    public void setDailyTasks(List<DailyTaskDef> dailyTasks) {
+        this.dailyTasks = dailyTasks;
+        indexTasks();
+        markDirty(StateSection.DAILY_TASKS);
+    }
+
+    /** Records an in-place change that setters cannot see, e.g. replacing one goal in the list. */
+    public void markDirty(StateSection section) {
+        switch (section.kind()) {
+            case DAY, EXTRAS, LEDGER, PURCHASE -> anna.markDirty(section); // keeps the changed month resident, drops date indexes
+            case GOALS -> {
+                goalIndex = Registry.of(goals, OneTimeGoal::id);
+                goalsByDate = null;
+                dirty.add(section);
+            }
+            case SHOP -> {
+                shopIndex = Registry.of(shop, ShopItem::id);
+                dirty.add(section);
+            }
+            case DAILY_TASKS -> {
+                indexTasks();
+                dirty.add(section);
+            }
+            default -> dirty.add(section);
+        }
+    }
+
+    /** Goals by id. */
+    public Registry<OneTimeGoal> goalIndex() {
+        return goalIndex;
+    }
+
+    /** Shop items by id. */
+    public Registry<ShopItem> shopIndex() {
+        return shopIndex;
+    }
+
+    /** Daily task definitions by id. */
+    public Registry<DailyTaskDef> taskIndex() {
+        return taskIndex;
+    }
+
+    /** First MINUTES task with a weekly minutes goal; its minutes make up the weekly goal. */
+    public Optional<DailyTaskDef> weeklyGoalTask() {
+        return Optional.ofNullable(weeklyGoalTask);
+    }
+
+    /**
+     * Per-week task totals. On the live state the days changed in the current mutation are refolded
+     * on every call, since callers mark a day before changing its log.
+     */
+    public WeekAggregates weeks() {
+        for (var day : anna.changedDays()) weeks.dayChanged(day);
+        return weeks;
+    }
+
+    /** Streak counters at month starts; on the live state the days changed so far are taken into account. */
+    public StreakCheckpoints streakCheckpoints() {
+        for (var day : anna.changedDays()) streakCheckpoints.dayChanged(day);
+        return streakCheckpoints;
+    }
+
+    /** Balances at week starts worked out by readers; see {@link BalanceCheckpoints}. */
+    public BalanceCheckpoints balanceCheckpoints() {
+        return balanceCheckpoints;
+    }
+
+    /** Goals completed on {@code date}, in list order. */
+    public List<OneTimeGoal> goalsCompletedOn(LocalDate date) {
+        var byDate = goalsByDate;
+        if (byDate == null) {
+            byDate = new HashMap<>();
+            for (var g : goals) {
+                if (g.completedAt() != null) byDate.computeIfAbsent(g.completedAt().toLocalDate(), k -> new ArrayList<>()).add(g);
+            }
+            goalsByDate = byDate;
+        }
+        return byDate.getOrDefault(date, List.of());
+    }
+
+    private void indexTasks() {
+        taskIndex = Registry.of(dailyTasks, DailyTaskDef::id);
+        weeks.clear();
+        streakCheckpoints.clear();
+        weeklyGoalTask = null;
+        if (dailyTasks == null) return;
+        for (var t : dailyTasks) {
+            if (t.kind() == DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0) {
+                weeklyGoalTask = t;
+                break;
+            }
+        }
+    }
+
+    /** Returns and forgets every section changed since the previous call, including the user's. */
+    public Set<StateSection> drainDirty() {
+        Set<StateSection> out = new LinkedHashSet<>(dirty);
+        out.addAll(anna.drainDirty());
+        dirty.clear();
+        return out;
+    }
+
+    /**
+     * Read-only copy of the state as of journal entry {@code version}, published to readers.
+     * Parts whose sections are not in {@code changed} are shared with {@code previous}, so a
+     * commit copies only what it touched; pass null to copy everything.
+     */
+    public AppState freeze(AppState previous, Set<StateSection> changed, long version) {
+        var s = new AppState();
+        s.installedAt = installedAt;
+        s.lastProcessedWeekStart = lastProcessedWeekStart;
+        s.journalSeq = version;
+        s.anna = anna.freeze(previous == null ? null : previous.anna, changed);
+        boolean keepGoals = previous != null && !changed.contains(StateSection.GOALS);
+        s.goals = keepGoals ? previous.goals : Collections.unmodifiableList(new ArrayList<>(goals));
+        s.goalIndex = keepGoals ? previous.goalIndex : goalIndex;
+        s.goalsByDate = keepGoals ? previous.goalsByDate : null;
+        boolean keepShop = previous != null && !changed.contains(StateSection.SHOP);
+        s.shop = keepShop ? previous.shop : Collections.unmodifiableList(new ArrayList<>(shop));
+        s.shopIndex = keepShop ? previous.shopIndex : shopIndex;
+        boolean keepTasks = previous != null && !changed.contains(StateSection.DAILY_TASKS);
+        s.dailyTasks = keepTasks ? previous.dailyTasks : Collections.unmodifiableList(new ArrayList<>(dailyTasks));
+        s.taskIndex = keepTasks ? previous.taskIndex : taskIndex;
+        s.weeklyGoalTask = keepTasks ? previous.weeklyGoalTask : weeklyGoalTask;
+        boolean keepSummaries = previous != null && changed.stream().noneMatch(c -> c.kind() == StateSection.Kind.WEEK);
+        s.weekSummaries = keepSummaries ? previous.weekSummaries : Collections.unmodifiableMap(new TreeMap<>(weekSummaries));
+        boolean keepCheckpoints = previous != null && changed.stream().noneMatch(c -> c.kind() == StateSection.Kind.CHECKPOINT);
+        s.replayCheckpoints = keepCheckpoints ? previous.replayCheckpoints : Collections.unmodifiableNavigableMap(new TreeMap<>(replayCheckpoints));
+        s.weeks = weeks().freeze(s, previous == null ? null : previous.weeks, changed);
+        s.streakCheckpoints = streakCheckpoints().freeze(s, previous == null ? null : previous.streakCheckpoints, changed);
+        s.balanceCheckpoints = BalanceCheckpoints.freeze(previous == null ? null : previous.balanceCheckpoints, changed, anna.getLedgerSince());
+        anna.forgetChangedDays();
+        return s;
+    }
 }
@@ -0,0 +1,61 @@
+package com.buseiny.app.model;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Balance at the start of each Monday, as the as-of-date queries work it out: the ledger opening
+ * plus the entries before that Monday once the ledger had started, the replayed balance before the
+ * previous week's results until then. Derived and never serialized; filled by readers of published
+ * states, and a commit keeps the Mondays of the previous copy that nothing it changed comes before.
+ */
+public final class BalanceCheckpoints {
+
+    // Monday (yyyy-MM-dd) -> balance at its start
+    private final NavigableMap<String, Integer> weeks;
+
+    BalanceCheckpoints() {
+        this(new ConcurrentSkipListMap<>());
+    }
+
+    private BalanceCheckpoints(NavigableMap<String, Integer> weeks) {
+        this.weeks = weeks;
+    }
+
+    /** The latest Monday at or before {@code date} with a known balance, or null. */
+    public Map.Entry<LocalDate, Integer> floor(LocalDate date) {
+        var e = weeks.floorEntry(date.toString());
+        return e == null ? null : Map.entry(LocalDate.parse(e.getKey()), e.getValue());
+    }
+
+    public void put(LocalDate monday, int balance) {
+        weeks.put(monday.toString(), balance);
+    }
+
+    /**
+     * Copy for a published state whose ledger starts on {@code ledgerSince}: the Mondays of
+     * {@code previous} that {@code changed} leaves valid. Ledger days invalidate the Mondays after
+     * them; logs, extras, goals, purchases, week summaries and replay checkpoints only feed the
+     * replay, so they invalidate Mondays before the ledger start.
+     */
+    static BalanceCheckpoints freeze(BalanceCheckpoints previous, Set<StateSection> changed, LocalDate ledgerSince) {
+        NavigableMap<String, Integer> out = new ConcurrentSkipListMap<>();
+        if (previous == null || ledgerSince == null || changed.contains(StateSection.DAILY_TASKS) || changed.contains(StateSection.LEDGER_START)) {
+            return new BalanceCheckpoints(out);
+        }
+        out.putAll(previous.weeks);
+        String since = ledgerSince.toString();
+        for (var s : changed) {
+            switch (s.kind()) {
+                case LEDGER -> out.tailMap(s.key(), false).clear();
+                case DAY, EXTRAS -> {
+                    if (s.key().compareTo(since) < 0) out.subMap(s.key(), false, since, false).clear();
+                }
+                case META, GOALS, PURCHASE, WEEK, CHECKPOINT -> out.headMap(since, false).clear();
+                default -> {}
+            }
+        }
+        return new BalanceCheckpoints(out);
+    }
+}
@@ -7,4 +7,13 @@ public class DailyLog {
     private java.util.Map<String,Integer> minutes = new java.util.HashMap<>();
     private java.util.Set<String> checks = new java.util.HashSet<>();
     private java.util.Set<String> minutesAwarded = new java.util.HashSet<>();
+
+    /** Copy with read-only collections, for published state snapshots. */
+    public DailyLog frozenCopy() {
+        var c = new DailyLog();
+        c.minutes = java.util.Collections.unmodifiableMap(new java.util.HashMap<>(minutes));
+        c.checks = java.util.Collections.unmodifiableSet(new java.util.HashSet<>(checks));
+        c.minutesAwarded = java.util.Collections.unmodifiableSet(new java.util.HashSet<>(minutesAwarded));
+        return c;
+    }
 }
@@ -40,6 +40,16 @@ public record DailyTaskDef(
                 weeklyRequiredCount == null || weeklyRequiredCount <= 0 ? 1 : weeklyRequiredCount
         );
     }
+
+    /** Whether {@code log} completes this task; null means nothing was logged that day. */
+    public boolean doneIn(DailyLog log) {
+        if (log == null) return false;
+        if (kind == DailyTaskKind.MINUTES) {
+            Integer m = log.getMinutes().get(id);
+            return m != null && minutesPerDay != null && m >= minutesPerDay;
+        }
+        return log.getChecks().contains(id);
+    }
 }
 
 
@@ -0,0 +1,609 @@
+package com.buseiny.app.model;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Map keyed by ISO date ({@code yyyy-MM-dd}) that keeps its entries grouped by month,
+ * so one month can be read or written without scanning the rest of the history. A month is an
+ * array indexed by day of month, found by its number ({@code year * 12 + month - 1}): a lookup by
+ * {@link LocalDate} or by key reads the digits and indexes, without parsing or comparing strings.
+ * Every put or remove reports the affected date to a change listener; entries are changed
+ * through the map itself, its entry set is read-only.
+ * <p>
+ * Months can be offloaded: they are known by entry count only and brought back through a
+ * {@link Loader} when first accessed. A month changed since it was last saved is never unloaded.
+ * All access holds the loader's lock when one is attached, so the maps sharing it
+ * are loaded and unloaded together.
+ * <p>
+ * {@link #freeze} takes a read-only copy that needs no lock to read. Months that did not change
+ * since the previous copy are shared with it, and offloaded months are shared with the live map
+ * through {@link Stored} holders that keep the entries as they were when the copy was taken.
+ */
+public class MonthSegmentedMap<V> extends AbstractMap<String, V> {
+
+    /** Storage behind offloaded months. Called with the map lock held. */
+    public interface Loader {
+        /** Brings a month back through {@link #loadMonth}. */
+        void load(String month);
+
+        /** Records an access to a resident month; the loader may unload others meanwhile. */
+        void accessed(String month);
+
+        /** Lock shared by the maps this loader serves. */
+        Lock lock();
+    }
+
+    // one month: keys and values by day of month - 1, keys null where there is no entry
+    private static final class Chunk<V> {
+        final String month;
+        final String[] keys = new String[31];
+        final Object[] values = new Object[31];
+        int size;
+
+        Chunk(String month) {
+            this.month = month;
+        }
+
+        boolean contains(int day) {
+            return keys[day] != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(int day) {
+            return (V) values[day];
+        }
+
+        V put(int day, String key, V value) {
+            V old = get(day);
+            if (keys[day] == null) size++;
+            keys[day] = key;
+            values[day] = value;
+            return old;
+        }
+
+        V remove(int day) {
+            V old = get(day);
+            if (keys[day] != null) size--;
+            keys[day] = null;
+            values[day] = null;
+            return old;
+        }
+
+        SortedMap<String, V> toSortedMap() {
+            var out = new TreeMap<String, V>();
+            for (int d = 0; d < 31; d++) {
+                if (keys[d] != null) out.put(keys[d], get(d));
+            }
+            return Collections.unmodifiableSortedMap(out);
+        }
+    }
+
+    // offloaded month: its entry count, and its entries once loaded, frozen for the copies sharing it
+    private static final class Stored<V> {
+        final String month;
+        final int count;
+        volatile Chunk<V> days;
+
+        Stored(String month, int count) {
+            this.month = month;
+            this.count = count;
+        }
+    }
+
+    // month number -> entries; live map: mutable months; frozen copy: months never changed again, shared between copies
+    private final TreeMap<Integer, Chunk<V>> months;
+    private final TreeMap<Integer, Stored<V>> offloaded;
+    private final UnaryOperator<V> copy;
+    private final Consumer<String> onChange;
+    private final boolean frozen;
+    // month -> change counter value of its last unsaved change
+    private final Map<Integer, Long> unsaved = new HashMap<>();
+    // months changed since the last freeze()
+    private final Set<Integer> changedSinceFreeze = new HashSet<>();
+    private Loader loader;
+    private Lock lock = new ReentrantLock();
+    private int size;
+    private long changes;
+
+    /**
+     * @param copy deep copy of a value, used for frozen copies
+     * @param onChange called with the date of every put or remove
+     */
+    public MonthSegmentedMap(UnaryOperator<V> copy, Consumer<String> onChange) {
+        this.months = new TreeMap<>();
+        this.offloaded = new TreeMap<>();
+        this.copy = copy;
+        this.onChange = onChange;
+        this.frozen = false;
+    }
+
+    private MonthSegmentedMap(MonthSegmentedMap<V> live, TreeMap<Integer, Chunk<V>> months) {
+        this.months = months;
+        this.offloaded = new TreeMap<>(live.offloaded);
+        this.copy = live.copy;
+        this.onChange = null;
+        this.frozen = true;
+        this.loader = live.loader;
+        this.lock = live.lock;
+        this.size = live.size;
+    }
+
+    /** {@code yyyy-MM} part of a date key. */
+    public static String monthOf(String date) {
+        return date.substring(0, 7);
+    }
+
+    /** Attaches the storage of offloaded months; must happen before the map is shared between threads. */
+    public void setLoader(Loader loader) {
+        checkLive();
+        this.loader = loader;
+        this.lock = loader.lock();
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof String k)) return null;
+        int day = dayIndex(k);
+        return day < 0 ? null : withMonth(monthIndex(k), days -> days == null ? null : days.get(day));
+    }
+
+    /** Entry of {@code date}, or null. */
+    public V get(LocalDate date) {
+        int day = date.getDayOfMonth() - 1;
+        return withMonth(monthIndex(date), days -> days == null ? null : days.get(day));
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        if (!(key instanceof String k)) return defaultValue;
+        int day = dayIndex(k);
+        return day < 0 ? defaultValue : withMonth(monthIndex(k), days -> days != null && days.contains(day) ? days.get(day) : defaultValue);
+    }
+
+    /** Entry of {@code date}, or {@code defaultValue} if there is none. */
+    public V getOrDefault(LocalDate date, V defaultValue) {
+        int day = date.getDayOfMonth() - 1;
+        return withMonth(monthIndex(date), days -> days != null && days.contains(day) ? days.get(day) : defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String k)) return false;
+        int day = dayIndex(k);
+        return day >= 0 && withMonth(monthIndex(k), days -> days != null && days.contains(day));
+    }
+
+    public boolean containsKey(LocalDate date) {
+        int day = date.getDayOfMonth() - 1;
+        return withMonth(monthIndex(date), days -> days != null && days.contains(day));
+    }
+
+    @Override
+    public V put(String key, V value) {
+        checkLive();
+        int month = monthIndex(key), day = dayIndex(key);
+        if (month < 0 || day < 0) throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + key);
+        lock.lock();
+        try {
+            var days = resident(month);
+            if (days == null) {
+                months.put(month, days = new Chunk<>(monthOf(key)));
+                if (loader != null) loader.accessed(days.month);
+            }
+            if (!days.contains(day)) size++;
+            var old = days.put(day, key, value);
+            changed(month);
+            onChange.accept(key);
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        checkLive();
+        if (!(key instanceof String k)) return null;
+        int month = monthIndex(k), day = dayIndex(k);
+        if (month < 0 || day < 0) return null;
+        lock.lock();
+        try {
+            var days = resident(month);
+            if (days == null || !days.contains(day)) return null;
+            var old = days.remove(day);
+            if (days.size == 0) months.remove(month);
+            size--;
+            changed(month);
+            onChange.accept(k);
+            return old;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        checkLive();
+        lock.lock();
+        try {
+            var keys = new ArrayList<>(keySet());
+            months.clear();
+            offloaded.clear();
+            size = 0;
+            keys.forEach(k -> changed(monthIndex(k)));
+            keys.forEach(onChange);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        if (frozen) return size;
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Calls {@code action} with the entries of {@code from}..{@code to} in date order,
+     * loading their months if needed. Months without entries are skipped.
+     */
+    public void forEach(LocalDate from, LocalDate to, BiConsumer<LocalDate, ? super V> action) {
+        if (to.isBefore(from)) return;
+        if (frozen) {
+            each(from, to, action);
+            return;
+        }
+        lock.lock();
+        try {
+            each(from, to, action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void each(LocalDate from, LocalDate to, BiConsumer<LocalDate, ? super V> action) {
+        int first = monthIndex(from), last = monthIndex(to);
+        var present = new TreeSet<>(months.subMap(first, true, last, true).keySet());
+        present.addAll(offloaded.subMap(first, true, last, true).keySet());
+        for (int month : present) {
+            var days = frozen ? frozenMonth(month) : resident(month);
+            if (days == null) continue;
+            int lo = month == first ? from.getDayOfMonth() - 1 : 0;
+            int hi = month == last ? to.getDayOfMonth() - 1 : 30;
+            for (int d = lo; d <= hi; d++) {
+                if (days.contains(d)) action.accept(LocalDate.of(month / 12, month % 12 + 1, d + 1), days.get(d));
+            }
+        }
+    }
+
+    /** Date of the first entry, or null if the map is empty. */
+    public LocalDate firstDate() {
+        if (frozen) return first();
+        lock.lock();
+        try {
+            return first();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LocalDate first() {
+        Integer month = months.isEmpty() ? null : months.firstKey();
+        if (!offloaded.isEmpty() && (month == null || offloaded.firstKey() < month)) month = offloaded.firstKey();
+        if (month == null) return null;
+        var days = frozen ? frozenMonth(month) : resident(month);
+        for (int d = 0; days != null && d < 31; d++) {
+            if (days.contains(d)) return LocalDate.of(month / 12, month % 12 + 1, d + 1);
+        }
+        return null;
+    }
+
+    /** Months that have at least one entry, resident or not, oldest first. */
+    public NavigableSet<String> months() {
+        if (frozen) return allMonths();
+        lock.lock();
+        try {
+            return allMonths();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private NavigableSet<String> allMonths() {
+        var all = new TreeSet<String>();
+        months.values().forEach(days -> all.add(days.month));
+        offloaded.values().forEach(stored -> all.add(stored.month));
+        return Collections.unmodifiableNavigableSet(all);
+    }
+
+    /** Entries of one month ({@code yyyy-MM}) in date order; empty if none. Loads the month if needed. */
+    public SortedMap<String, V> month(String month) {
+        return withMonth(monthIndex(month), days -> days == null ? Collections.emptySortedMap() : days.toSortedMap());
+    }
+
+    /** Number of entries in one month without loading it. */
+    public int monthSize(String month) {
+        if (frozen) return count(monthIndex(month));
+        lock.lock();
+        try {
+            return count(monthIndex(month));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int count(int month) {
+        var days = months.get(month);
+        if (days != null) return days.size;
+        var stored = offloaded.get(month);
+        return stored == null ? 0 : stored.count;
+    }
+
+    /**
+     * Installs a stored month without notifying the listener. A month that is already
+     * resident is kept as is, since it may hold changes newer than the stored copy.
+     */
+    public void loadMonth(String month, Map<String, V> days) {
+        checkLive();
+        lock.lock();
+        try {
+            int index = monthIndex(month);
+            if (months.containsKey(index)) return;
+            var chunk = chunk(month, days);
+            var stored = offloaded.remove(index);
+            if (stored != null) {
+                size -= stored.count;
+                if (stored.days == null) stored.days = frozenCopy(chunk);
+            }
+            if (chunk.size == 0) return;
+            months.put(index, chunk);
+            size += chunk.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Declares a stored month with {@code count} entries that is loaded only when accessed. */
+    public void offloadMonth(String month, int count) {
+        checkLive();
+        lock.lock();
+        try {
+            int index = monthIndex(month);
+            if (months.containsKey(index) || count <= 0) return;
+            var known = offloaded.put(index, new Stored<>(month, count));
+            size += count - (known == null ? 0 : known.count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a resident month from memory, keeping only its entry count.
+     * @return false if the month has unsaved changes and was kept
+     */
+    public boolean unloadMonth(String month) {
+        checkLive();
+        lock.lock();
+        try {
+            int index = monthIndex(month);
+            if (unsaved.containsKey(index)) return false;
+            var days = months.remove(index);
+            if (days != null) offloaded.put(index, new Stored<>(days.month, days.size));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Resident months, oldest first. */
+    public NavigableSet<String> residentMonths() {
+        checkLive();
+        lock.lock();
+        try {
+            var out = new TreeSet<String>();
+            months.values().forEach(days -> out.add(days.month));
+            return Collections.unmodifiableNavigableSet(out);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records a change made in place to the value of {@code date}; the month stays resident until saved. */
+    public void markChanged(String date) {
+        checkLive();
+        lock.lock();
+        try {
+            changed(monthIndex(date));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Counter value of the last unsaved change of {@code month}, 0 if it has none. */
+    public long changeMark(String month) {
+        checkLive();
+        lock.lock();
+        try {
+            return unsaved.getOrDefault(monthIndex(month), 0L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Marks {@code month} saved unless it changed again after {@code mark} was taken. */
+    public void markSaved(String month, long mark) {
+        checkLive();
+        lock.lock();
+        try {
+            unsaved.remove(monthIndex(month), mark);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read-only copy of the current entries. Months unchanged since {@code previous} was frozen
+     * from this map are shared with it; the rest are deep copied. Reading the copy takes no lock,
+     * except to load an offloaded month the first time.
+     */
+    public MonthSegmentedMap<V> freeze(MonthSegmentedMap<V> previous) {
+        checkLive();
+        lock.lock();
+        try {
+            TreeMap<Integer, Chunk<V>> chunks = new TreeMap<>();
+            for (var e : months.entrySet()) {
+                int month = e.getKey();
+                Chunk<V> days = null;
+                if (previous != null && !changedSinceFreeze.contains(month)) days = previous.loadedMonth(month);
+                chunks.put(month, days != null ? days : frozenCopy(e.getValue()));
+            }
+            changedSinceFreeze.clear();
+            return new MonthSegmentedMap<>(this, chunks);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void changed(int month) {
+        unsaved.put(month, ++changes);
+        changedSinceFreeze.add(month);
+    }
+
+    private void checkLive() {
+        if (frozen) throw new UnsupportedOperationException("Frozen copy is read-only");
+    }
+
+    // year * 12 + month - 1 of a yyyy-MM or yyyy-MM-dd key, -1 if it does not start with one
+    private static int monthIndex(String key) {
+        if (key.length() < 7 || key.charAt(4) != '-') return -1;
+        int year = digits(key, 0, 4), month = digits(key, 5, 7);
+        return year < 0 || month < 1 || month > 12 ? -1 : year * 12 + month - 1;
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    // day of month - 1 of a yyyy-MM-dd key, -1 if it is not one
+    private static int dayIndex(String key) {
+        if (key.length() != 10 || key.charAt(7) != '-') return -1;
+        int day = digits(key, 8, 10);
+        return day < 1 || day > 31 ? -1 : day - 1;
+    }
+
+    private static int digits(String s, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + c - '0';
+        }
+        return n;
+    }
+
+    private Chunk<V> chunk(String month, Map<String, V> days) {
+        var out = new Chunk<V>(month);
+        days.forEach((k, v) -> {
+            int day = dayIndex(k);
+            if (day < 0 || !k.startsWith(month)) throw new IllegalArgumentException("Not a date of " + month + ": " + k);
+            out.put(day, k, v);
+        });
+        return out;
+    }
+
+    private Chunk<V> frozenCopy(Chunk<V> days) {
+        var out = new Chunk<V>(days.month);
+        for (int d = 0; d < 31; d++) {
+            if (days.contains(d)) out.put(d, days.keys[d], days.get(d) == null ? null : copy.apply(days.get(d)));
+        }
+        return out;
+    }
+
+    // applies f to the entries of a month (null if it has none), holding the lock on the live map
+    private <R> R withMonth(int month, Function<Chunk<V>, R> f) {
+        if (month < 0) return f.apply(null);
+        if (frozen) return f.apply(frozenMonth(month));
+        lock.lock();
+        try {
+            return f.apply(resident(month));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // entries of a month in a frozen copy if they are in memory, without loading
+    private Chunk<V> loadedMonth(int month) {
+        var days = months.get(month);
+        if (days != null) return days;
+        var stored = offloaded.get(month);
+        return stored == null ? null : stored.days;
+    }
+
+    private Chunk<V> frozenMonth(int month) {
+        var days = months.get(month);
+        if (days != null) return days;
+        var stored = offloaded.get(month);
+        if (stored == null) return null;
+        if (stored.days == null && loader != null) {
+            // the live map still offloads this month through the same holder, so loading it fills the holder
+            lock.lock();
+            try {
+                if (stored.days == null) loader.load(stored.month);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return stored.days;
+    }
+
+    private Chunk<V> resident(int month) {
+        var stored = loader == null ? null : offloaded.get(month);
+        if (stored != null) loader.load(stored.month);
+        var days = months.get(month);
+        if (days != null && loader != null) loader.accessed(days.month);
+        return days;
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<>() {
+                    private final Iterator<String> monthIt = months().iterator();
+                    private Iterator<Entry<String, V>> dayIt = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!dayIt.hasNext() && monthIt.hasNext()) dayIt = month(monthIt.next()).entrySet().iterator();
+                        return dayIt.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        var e = dayIt.next();
+                        return new SimpleImmutableEntry<>(e);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MonthSegmentedMap.this.size();
+            }
+        };
+    }
+}
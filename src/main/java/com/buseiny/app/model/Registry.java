@@ -0,0 +1,53 @@
+package com.buseiny.app.model;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Immutable index of a definition list (tasks, goals, shop items) by id.
+ * Ordinals are the positions in the list; when an id repeats, its first entry wins,
+ * as with a linear search.
+ */
+public final class Registry<T> {
+
+    private static final Registry<?> EMPTY = new Registry<>(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, T> byId;
+    private final Map<String, Integer> ordinals;
+
+    private Registry(Map<String, T> byId, Map<String, Integer> ordinals) {
+        this.byId = byId;
+        this.ordinals = ordinals;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Registry<T> of(List<T> items, Function<T, String> id) {
+        if (items == null || items.isEmpty()) return (Registry<T>) EMPTY;
+        Map<String, T> byId = new HashMap<>(items.size() * 2);
+        Map<String, Integer> ordinals = new HashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++) {
+            var item = items.get(i);
+            var key = id.apply(item);
+            if (byId.putIfAbsent(key, item) == null) ordinals.put(key, i);
+        }
+        return new Registry<>(byId, ordinals);
+    }
+
+    /** Entry with {@code id}, or null. */
+    public T get(String id) {
+        return byId.get(id);
+    }
+
+    public Optional<T> find(String id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    /** Position of {@code id} in the list, -1 if absent. */
+    public int ordinal(String id) {
+        return ordinals.getOrDefault(id, -1);
+    }
+
+    public boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+}
@@ -23,5 +23,18 @@ public class RouletteState {
     // For shop rewards
     private String discountedShopId;     // 50% off item id
     private String freeShopId;           // free item id (<100)
-}
 
+    public RouletteState copy() {
+        var c = new RouletteState();
+        c.date = date;
+        c.effect = effect;
+        c.dailyId = dailyId;
+        c.dailyBaseReward = dailyBaseReward;
+        c.dailyPenaltyApplied = dailyPenaltyApplied;
+        c.goalId = goalId;
+        c.bonusPoints = bonusPoints;
+        c.discountedShopId = discountedShopId;
+        c.freeShopId = freeShopId;
+        return c;
+    }
+}
@@ -0,0 +1,61 @@
+package com.buseiny.app.model;
+
+import java.time.LocalDate;
+
+/**
+ * Addressable part of {@link AppState} that a mutation can change.
+ * Per-date sections carry the ISO date as key (a week its Monday), purchases carry their list index.
+ */
+public record StateSection(Kind kind, String key) {
+
+    public enum Kind {
+        META,        // installedAt, lastProcessedWeekStart
+        GOALS,
+        SHOP,
+        DAILY_TASKS,
+        PROFILE,     // username, avatarUrl
+        BALANCE,
+        STREAKS,
+        DAY,         // one DailyLog by date
+        EXTRAS,      // history extras of one date
+        PURCHASE,    // one purchase by index
+        GIFTS,
+        ROULETTE,
+        WEEK,        // summary of one closed week by its start
+        CHECKPOINT,  // balance the recalculation replay reached at one week start
+        LEDGER,      // ledger entries of one date
+        LEDGER_START // first date of the ledger and the balance it starts from
+    }
+
+    public static final StateSection META = new StateSection(Kind.META, null);
+    public static final StateSection GOALS = new StateSection(Kind.GOALS, null);
+    public static final StateSection SHOP = new StateSection(Kind.SHOP, null);
+    public static final StateSection DAILY_TASKS = new StateSection(Kind.DAILY_TASKS, null);
+    public static final StateSection PROFILE = new StateSection(Kind.PROFILE, null);
+    public static final StateSection BALANCE = new StateSection(Kind.BALANCE, null);
+    public static final StateSection STREAKS = new StateSection(Kind.STREAKS, null);
+    public static final StateSection GIFTS = new StateSection(Kind.GIFTS, null);
+    public static final StateSection ROULETTE = new StateSection(Kind.ROULETTE, null);
+    public static final StateSection LEDGER_START = new StateSection(Kind.LEDGER_START, null);
+
+    public static StateSection day(String date) { return new StateSection(Kind.DAY, date); }
+    public static StateSection day(LocalDate date) { return day(date.toString()); }
+    public static StateSection extras(String date) { return new StateSection(Kind.EXTRAS, date); }
+    public static StateSection extras(LocalDate date) { return extras(date.toString()); }
+    public static StateSection checkpoint(LocalDate weekStart) { return new StateSection(Kind.CHECKPOINT, weekStart.toString()); }
+    public static StateSection ledger(String date) { return new StateSection(Kind.LEDGER, date); }
+    public static StateSection week(LocalDate weekStart) { return new StateSection(Kind.WEEK, weekStart.toString()); }
+    public static StateSection purchase(int index) { return new StateSection(Kind.PURCHASE, Integer.toString(index)); }
+
+    /** Stable textual id, e.g. {@code balance} or {@code day:2025-09-01}. */
+    public String id() {
+        String k = kind.name().toLowerCase();
+        return key == null ? k : k + ":" + key;
+    }
+
+    public static StateSection parse(String id) {
+        int i = id.indexOf(':');
+        Kind kind = Kind.valueOf((i < 0 ? id : id.substring(0, i)).toUpperCase());
+        return new StateSection(kind, i < 0 ? null : id.substring(i + 1));
+    }
+}
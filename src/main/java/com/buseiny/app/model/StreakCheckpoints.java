@@ -0,0 +1,83 @@
+package com.buseiny.app.model;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Streak counters of every task definition at the start of each month, as the history counts
+ * them: a logged day with the task done adds one, a logged day without it resets the counter,
+ * days without a log leave it alone. Counters are by position in the task list, so repeated ids
+ * count separately. A month's counters are worked out from the closest earlier month known, and
+ * dropped when a day before it changes; published copies cache what readers work out.
+ */
+public final class StreakCheckpoints {
+
+    private final AppState owner;
+    // month (yyyy-MM) -> counters at its first day; live: writer thread only, published: any thread
+    private final NavigableMap<String, int[]> months;
+
+    StreakCheckpoints(AppState owner) {
+        this(owner, new TreeMap<>());
+    }
+
+    private StreakCheckpoints(AppState owner, NavigableMap<String, int[]> months) {
+        this.owner = owner;
+        this.months = months;
+    }
+
+    /** Counters at the start of {@code month} ({@code yyyy-MM}), by task position. */
+    public int[] at(String month) {
+        var hit = months.get(month);
+        if (hit != null) return hit.clone();
+        var defs = owner.getDailyTasks();
+        var daily = owner.getAnna().getDaily();
+        var floor = months.lowerEntry(month);
+        int[] streak = floor == null ? new int[defs.size()] : floor.getValue().clone();
+        var logged = floor == null
+                ? daily.months().headSet(month, false)
+                : daily.months().subSet(floor.getKey(), true, month, false);
+        for (var m : logged) {
+            if (floor == null || m.compareTo(floor.getKey()) > 0) months.put(m, streak.clone());
+            var start = LocalDate.parse(m + "-01");
+            daily.forEach(start, start.plusMonths(1).minusDays(1), (d, log) -> advance(defs, streak, log));
+        }
+        months.put(month, streak.clone());
+        return streak;
+    }
+
+    /** Moves {@code streak} past one logged day. */
+    public static void advance(List<DailyTaskDef> defs, int[] streak, DailyLog log) {
+        for (int i = 0; i < streak.length; i++) {
+            var def = defs.get(i);
+            if (!def.streakEnabled()) continue;
+            streak[i] = def.doneIn(log) ? streak[i] + 1 : 0;
+        }
+    }
+
+    /** Drops the months after the one of the day logged under {@code key}. */
+    void dayChanged(String key) {
+        months.tailMap(MonthSegmentedMap.monthOf(key), false).clear();
+    }
+
+    /** Forgets every month, e.g. after the task definitions changed. */
+    void clear() {
+        months.clear();
+    }
+
+    /**
+     * Copy for {@code view}, a published state: the months of this one plus those of
+     * {@code previous} that no day in {@code changed} comes before.
+     */
+    StreakCheckpoints freeze(AppState view, StreakCheckpoints previous, Set<StateSection> changed) {
+        NavigableMap<String, int[]> out = new ConcurrentSkipListMap<>();
+        if (previous != null && !changed.contains(StateSection.DAILY_TASKS)) {
+            out.putAll(previous.months);
+            for (var s : changed) {
+                if (s.kind() == StateSection.Kind.DAY) out.tailMap(MonthSegmentedMap.monthOf(s.key()), false).clear();
+            }
+        }
+        out.putAll(months);
+        return new StreakCheckpoints(view, out);
+    }
+}
@@ -2,7 +2,12 @@ package com.buseiny.app.model;
 
 import java.util.*;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import com.buseiny.app.dto.HistoryDTO;
 
 @Data
@@ -12,13 +17,20 @@ public class UserState {
     private String avatarUrl;
 
     // logs by date (yyyy-MM-dd)
-    private Map<String, DailyLog> daily = new HashMap<>();
+    private MonthSegmentedMap<DailyLog> daily = new MonthSegmentedMap<>(DailyLog::frozenCopy, d -> markDirty(StateSection.day(d)));
 
     // streaks for tasks: taskId -> streak count
     private Map<String, Integer> streaks = new HashMap<>();
 
     // extra history entries like roulette bonuses
-    private Map<String, List<HistoryDTO.Item>> historyExtras = new HashMap<>();
+    private MonthSegmentedMap<List<HistoryDTO.Item>> historyExtras = new MonthSegmentedMap<>(UserState::frozenItems, d -> markDirty(StateSection.extras(d)));
+
+    // every balance change as it happened, by date; history from ledgerSince on is read from here
+    private MonthSegmentedMap<List<HistoryDTO.Item>> ledger = new MonthSegmentedMap<>(UserState::frozenItems, d -> markDirty(StateSection.ledger(d)));
+
+    // first day the ledger covers completely, and the balance before any of its entries
+    private java.time.LocalDate ledgerSince;
+    private int ledgerOpening;
 
     // purchases and achievements
     private List<com.buseiny.app.model.Purchase> purchases = new ArrayList<>();
@@ -28,4 +40,170 @@ public class UserState {
 
     // roulette result for today
     private RouletteState todayRoulette;
+
+    // sections changed since the last drainDirty(); never serialized
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final transient Set<StateSection> dirty = new LinkedHashSet<>();
+
+    // days changed since the last commit, refolded into the week totals; never serialized
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final transient Set<String> changedDays = new HashSet<>();
+
+    // purchases by purchase date, built on first use; never serialized
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient volatile Map<java.time.LocalDate, List<Purchase>> purchasesByDate;
+
+    public void setUsername(String username) {
+        this.username = username;
+        markDirty(StateSection.PROFILE);
+    }
+
+    public void setAvatarUrl(String avatarUrl) {
+        this.avatarUrl = avatarUrl;
+        markDirty(StateSection.PROFILE);
+    }
+
+    public void setBalance(int balance) {
+        this.balance = balance;
+        markDirty(StateSection.BALANCE);
+    }
+
+    public void setDaily(Map<String, DailyLog> daily) {
+        this.daily = new MonthSegmentedMap<>(DailyLog::frozenCopy, d -> markDirty(StateSection.day(d)));
+        this.daily.putAll(daily);
+    }
+
+    public void setStreaks(Map<String, Integer> streaks) {
+        this.streaks = streaks;
+        markDirty(StateSection.STREAKS);
+    }
+
+    public void setHistoryExtras(Map<String, List<HistoryDTO.Item>> historyExtras) {
+        this.historyExtras = new MonthSegmentedMap<>(UserState::frozenItems, d -> markDirty(StateSection.extras(d)));
+        this.historyExtras.putAll(historyExtras);
+    }
+
+    public void setLedger(Map<String, List<HistoryDTO.Item>> ledger) {
+        this.ledger = new MonthSegmentedMap<>(UserState::frozenItems, d -> markDirty(StateSection.ledger(d)));
+        this.ledger.putAll(ledger);
+    }
+
+    public void setLedgerSince(java.time.LocalDate ledgerSince) {
+        this.ledgerSince = ledgerSince;
+        markDirty(StateSection.LEDGER_START);
+    }
+
+    public void setLedgerOpening(int ledgerOpening) {
+        this.ledgerOpening = ledgerOpening;
+        markDirty(StateSection.LEDGER_START);
+    }
+
+    /** Appends an entry to the ledger of {@code date}. */
+    public void addLedgerEntry(java.time.LocalDate date, String label, int points) {
+        String key = date.toString();
+        var items = new ArrayList<>(ledger.getOrDefault(key, List.of()));
+        items.add(new HistoryDTO.Item(label, points));
+        ledger.put(key, items);
+    }
+
+    public void setPurchases(List<Purchase> purchases) {
+        this.purchases = purchases;
+        this.purchasesByDate = null;
+        for (int i = 0; i < purchases.size(); i++) markDirty(StateSection.purchase(i));
+    }
+
+    public void addPurchase(Purchase purchase) {
+        purchases.add(purchase);
+        purchasesByDate = null;
+        markDirty(StateSection.purchase(purchases.size() - 1));
+    }
+
+    public void setGifts(List<Gift> gifts) {
+        this.gifts = gifts;
+        markDirty(StateSection.GIFTS);
+    }
+
+    public void setTodayRoulette(RouletteState todayRoulette) {
+        this.todayRoulette = todayRoulette;
+        markDirty(StateSection.ROULETTE);
+    }
+
+    /** Records an in-place change that setters cannot see, e.g. a streak counter or today's log. */
+    public void markDirty(StateSection section) {
+        switch (section.kind()) {
+            case DAY -> {
+                daily.markChanged(section.key());
+                changedDays.add(section.key());
+            }
+            case EXTRAS -> historyExtras.markChanged(section.key());
+            case LEDGER -> ledger.markChanged(section.key());
+            case PURCHASE -> purchasesByDate = null;
+            default -> { }
+        }
+        dirty.add(section);
+    }
+
+    /** Purchases made on {@code date}, in list order. */
+    public List<Purchase> purchasesOn(java.time.LocalDate date) {
+        var byDate = purchasesByDate;
+        if (byDate == null) {
+            byDate = new HashMap<>();
+            for (var p : purchases) {
+                if (p.purchasedAt() != null) byDate.computeIfAbsent(p.purchasedAt().toLocalDate(), k -> new ArrayList<>()).add(p);
+            }
+            purchasesByDate = byDate;
+        }
+        return byDate.getOrDefault(date, List.of());
+    }
+
+    /** Days changed since {@link #forgetChangedDays()}; callers may still be changing them. */
+    Set<String> changedDays() {
+        return changedDays;
+    }
+
+    void forgetChangedDays() {
+        changedDays.clear();
+    }
+
+    Set<StateSection> drainDirty() {
+        Set<StateSection> out = new LinkedHashSet<>(dirty);
+        dirty.clear();
+        return out;
+    }
+
+    /**
+     * Read-only copy for a published snapshot, see {@link AppState#freeze}. Collections whose
+     * sections are not in {@code changed} are shared with {@code previous}.
+     */
+    UserState freeze(UserState previous, Set<StateSection> changed) {
+        boolean purchasesChanged = changed.stream().anyMatch(s -> s.kind() == StateSection.Kind.PURCHASE);
+        var u = new UserState();
+        u.username = username;
+        u.balance = balance;
+        u.avatarUrl = avatarUrl;
+        u.daily = daily.freeze(previous == null ? null : previous.daily);
+        u.historyExtras = historyExtras.freeze(previous == null ? null : previous.historyExtras);
+        u.ledger = ledger.freeze(previous == null ? null : previous.ledger);
+        u.ledgerSince = ledgerSince;
+        u.ledgerOpening = ledgerOpening;
+        u.streaks = previous != null && !changed.contains(StateSection.STREAKS)
+                ? previous.streaks : Collections.unmodifiableMap(new HashMap<>(streaks));
+        u.purchases = previous != null && !purchasesChanged
+                ? previous.purchases : Collections.unmodifiableList(new ArrayList<>(purchases));
+        u.purchasesByDate = previous != null && !purchasesChanged ? previous.purchasesByDate : null;
+        u.gifts = previous != null && !changed.contains(StateSection.GIFTS)
+                ? previous.gifts : Collections.unmodifiableList(new ArrayList<>(gifts));
+        u.todayRoulette = todayRoulette == null ? null : todayRoulette.copy();
+        return u;
+    }
+
+    private static List<HistoryDTO.Item> frozenItems(List<HistoryDTO.Item> items) {
+        return Collections.unmodifiableList(new ArrayList<>(items));
+    }
 }
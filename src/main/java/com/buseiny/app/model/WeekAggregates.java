@@ -0,0 +1,171 @@
+package com.buseiny.app.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-week totals of every task (minutes logged, days completed), derived from the day logs and
+ * task definitions of one {@link AppState}; never serialized. A week is computed from its seven
+ * logs the first time it is asked for and then kept up to date as its days change: the live state
+ * refolds only the changed days, a new task list drops everything. Published copies share the
+ * weeks that their commit did not touch and cache weeks computed by readers.
+ */
+public final class WeekAggregates {
+
+    /** Totals of one task over one week. */
+    public record Totals(int minutes, int daysDone) {
+        static final Totals NONE = new Totals(0, 0);
+    }
+
+    /** One day's contribution: minutes per task and the tasks done. */
+    private record Day(Map<String, Integer> minutes, Set<String> done) {
+        static final Day EMPTY = new Day(Map.of(), Set.of());
+    }
+
+    /** Totals of the week starting on Monday {@code start}. Immutable. */
+    public static final class Week {
+        private final LocalDate start;
+        private final Day[] days;
+        private final Map<String, Totals> totals;
+
+        private Week(LocalDate start, Day[] days) {
+            this.start = start;
+            this.days = days;
+            Map<String, int[]> sum = new HashMap<>();
+            for (var d : days) {
+                d.minutes().forEach((id, m) -> sum.computeIfAbsent(id, k -> new int[2])[0] += m);
+                for (var id : d.done()) sum.computeIfAbsent(id, k -> new int[2])[1]++;
+            }
+            Map<String, Totals> t = new HashMap<>(sum.size() * 2);
+            sum.forEach((id, v) -> t.put(id, new Totals(v[0], v[1])));
+            this.totals = t;
+        }
+
+        public LocalDate start() {
+            return start;
+        }
+
+        public Totals task(String taskId) {
+            return totals.getOrDefault(taskId, Totals.NONE);
+        }
+
+        public int minutes(String taskId) {
+            return task(taskId).minutes();
+        }
+
+        public int daysDone(String taskId) {
+            return task(taskId).daysDone();
+        }
+
+        /** Whether {@code taskId} was done on {@code date}, a day of this week. */
+        public boolean done(String taskId, LocalDate date) {
+            return days[(int) (date.toEpochDay() - start.toEpochDay())].done().contains(taskId);
+        }
+
+        /** Totals of the days of this week up to and including {@code date}. */
+        public Week through(LocalDate date) {
+            int last = (int) (date.toEpochDay() - start.toEpochDay());
+            if (last >= 6) return this;
+            var copy = days.clone();
+            for (int i = Math.max(last + 1, 0); i < 7; i++) copy[i] = Day.EMPTY;
+            return new Week(start, copy);
+        }
+
+        private Week withDay(int i, Day day) {
+            var copy = days.clone();
+            copy[i] = day;
+            return new Week(start, copy);
+        }
+    }
+
+    private final AppState owner;
+    // live: touched by the writer thread only; published: read by any thread, filled on miss
+    private final Map<LocalDate, Week> weeks;
+
+    WeekAggregates(AppState owner) {
+        this(owner, new HashMap<>());
+    }
+
+    private WeekAggregates(AppState owner, Map<LocalDate, Week> weeks) {
+        this.owner = owner;
+        this.weeks = weeks;
+    }
+
+    /** Totals of the week starting on Monday {@code weekStart}. */
+    public Week week(LocalDate weekStart) {
+        var w = weeks.get(weekStart);
+        if (w != null) return w;
+        var days = new Day[7];
+        for (int i = 0; i < 7; i++) days[i] = day(weekStart.plusDays(i));
+        w = new Week(weekStart, days);
+        weeks.put(weekStart, w);
+        return w;
+    }
+
+    /** Refolds the day logged under {@code key} into its week, if that week is kept. */
+    void dayChanged(String key) {
+        var date = parse(key);
+        if (date == null) return;
+        var start = weekStart(date);
+        var w = weeks.get(start);
+        if (w != null) weeks.put(start, w.withDay((int) (date.toEpochDay() - start.toEpochDay()), day(date)));
+    }
+
+    /** Forgets every week, e.g. after the task definitions changed. */
+    void clear() {
+        weeks.clear();
+    }
+
+    /**
+     * Copy for {@code view}, a published state: the weeks of this one plus those of
+     * {@code previous} whose days and task definitions are not in {@code changed}. Weeks that
+     * readers used and this commit changed are taken over by this one, which keeps them current.
+     */
+    WeekAggregates freeze(AppState view, WeekAggregates previous, Set<StateSection> changed) {
+        Map<LocalDate, Week> out = new ConcurrentHashMap<>();
+        if (previous != null && !changed.contains(StateSection.DAILY_TASKS)) {
+            out.putAll(previous.weeks);
+            for (var s : changed) {
+                if (s.kind() != StateSection.Kind.DAY) continue;
+                var date = parse(s.key());
+                if (date != null && out.remove(weekStart(date)) != null) week(weekStart(date));
+            }
+        }
+        out.putAll(weeks);
+        return new WeekAggregates(view, out);
+    }
+
+    private Day day(LocalDate date) {
+        var log = owner.getAnna().getDaily().get(date);
+        if (log == null) return Day.EMPTY;
+        Map<String, Integer> minutes = new HashMap<>();
+        log.getMinutes().forEach((id, m) -> {
+            if (m != null) minutes.put(id, m);
+        });
+        Set<String> done = new HashSet<>();
+        for (var def : owner.getDailyTasks()) {
+            if (owner.taskIndex().get(def.id()) != def) continue; // only the first definition of an id counts
+            Integer m = minutes.get(def.id());
+            boolean d = def.kind() == DailyTaskKind.MINUTES
+                    ? m != null && def.minutesPerDay() != null && m >= def.minutesPerDay()
+                    : log.getChecks().contains(def.id());
+            if (d) done.add(def.id());
+        }
+        return new Day(Collections.unmodifiableMap(minutes), Collections.unmodifiableSet(done));
+    }
+
+    private static LocalDate weekStart(LocalDate date) {
+        return date.minusDays(date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+    }
+
+    private static LocalDate parse(String key) {
+        try {
+            return LocalDate.parse(key);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
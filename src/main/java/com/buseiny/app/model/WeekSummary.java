@@ -0,0 +1,23 @@
+package com.buseiny.app.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Outcome of a closed week, stored when the week is processed so history and recalculation
+ * do not have to work it out from the day logs again.
+ */
+public record WeekSummary(
+        LocalDate weekStart,
+        List<Task> tasks,
+        Integer minutesResult, // weekly minutes bonus (+) or fine (-); null without a weekly minutes goal
+        int penalties,         // sum of the task penalties
+        int balance            // balance once the week's results were applied
+) {
+    /** What one task reached in the week and the penalty it drew. */
+    public record Task(String id, int daysDone, int minutes, int required, int penalty) {}
+
+    public WeekSummary withBalance(int balance) {
+        return new WeekSummary(weekStart, tasks, minutesResult, penalties, balance);
+    }
+}
@@ -0,0 +1,253 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.DailyLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Compact encoding of a month segment:
+ * <pre>
+ *   "BSM" version:u8  firstDay (epoch day of the 1st)
+ *   strings: n, n x (len, utf-8)              task ids and labels, referenced by index
+ *   daily:   n, n x (day, minutes, checks, minutesAwarded)
+ *   extras:  n, n x (day, items: n x (label, points))
+ *   ledger:  same as extras (version 2 on)
+ * </pre>
+ * Counts, indexes and days are unsigned varints, minutes and points zigzag varints.
+ * A day is the day of month (1..31); 0 is followed by a string index for keys that are
+ * not a date of the month.
+ */
+final class BinaryMonthCodec implements MonthCodec {
+    private static final byte[] MAGIC = {'B', 'S', 'M'};
+    static final int VERSION = 2;
+
+    @Override
+    public String extension() {
+        return ".bin";
+    }
+
+    @Override
+    public byte[] encode(String month, SegmentedStore.MonthSegment seg) {
+        var ym = YearMonth.parse(month);
+        var first = ym.atDay(1);
+        var strings = new LinkedHashMap<String, Integer>();
+        var body = new Out(256);
+
+        body.uint(seg.daily().size());
+        for (var e : seg.daily().entrySet()) {
+            day(body, strings, ym, e.getKey());
+            var log = e.getValue();
+            body.uint(log.getMinutes().size());
+            for (var m : log.getMinutes().entrySet()) {
+                body.uint(intern(strings, m.getKey()));
+                body.sint(m.getValue() == null ? 0 : m.getValue());
+            }
+            ids(body, strings, log.getChecks());
+            ids(body, strings, log.getMinutesAwarded());
+        }
+        items(body, strings, ym, seg.historyExtras());
+        items(body, strings, ym, seg.ledger() == null ? Map.of() : seg.ledger());
+
+        var out = new Out(body.size() + 64);
+        out.bytes(MAGIC);
+        out.u8(VERSION);
+        out.sint(first.toEpochDay());
+        out.uint(strings.size());
+        for (String s : strings.keySet()) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.uint(b.length);
+            out.bytes(b);
+        }
+        out.write(body.buf(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    @Override
+    public SegmentedStore.MonthSegment decode(String month, byte[] bytes) throws IOException {
+        var in = new In(bytes);
+        for (byte b : MAGIC) {
+            if (in.u8() != b) throw new IOException("Not a binary month segment: " + month);
+        }
+        int version = in.u8();
+        if (version > VERSION) throw new IOException("Unsupported month segment version " + version + ": " + month);
+        var first = LocalDate.ofEpochDay(in.sint());
+        String[] strings = new String[in.count()];
+        for (int i = 0; i < strings.length; i++) strings[i] = in.utf8(in.count());
+
+        try {
+            var daily = daily(in, strings, first);
+            var extras = items(in, strings, first);
+            var ledger = version >= 2 ? items(in, strings, first) : Map.<String, List<HistoryDTO.Item>>of();
+            return new SegmentedStore.MonthSegment(daily, extras, null, ledger);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt month segment " + month, e);
+        }
+    }
+
+    private static Map<String, DailyLog> daily(In in, String[] strings, LocalDate first) throws IOException {
+        int n = in.count();
+        Map<String, DailyLog> daily = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            String key = day(in, strings, first);
+            var log = new DailyLog();
+            int minutes = in.count();
+            for (int j = 0; j < minutes; j++) log.getMinutes().put(strings[(int) in.uint()], (int) in.sint());
+            ids(in, strings, log.getChecks());
+            ids(in, strings, log.getMinutesAwarded());
+            daily.put(key, log);
+        }
+        return daily;
+    }
+
+    private static void items(Out out, Map<String, Integer> strings, YearMonth ym, Map<String, List<HistoryDTO.Item>> byDay) {
+        out.uint(byDay.size());
+        for (var e : byDay.entrySet()) {
+            day(out, strings, ym, e.getKey());
+            var items = e.getValue() == null ? List.<HistoryDTO.Item>of() : e.getValue();
+            out.uint(items.size());
+            for (var item : items) {
+                out.uint(intern(strings, item.label()));
+                out.sint(item.points());
+            }
+        }
+    }
+
+    private static Map<String, List<HistoryDTO.Item>> items(In in, String[] strings, LocalDate first) throws IOException {
+        int n = in.count();
+        Map<String, List<HistoryDTO.Item>> byDay = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            String key = day(in, strings, first);
+            int count = in.count();
+            List<HistoryDTO.Item> items = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) items.add(new HistoryDTO.Item(strings[(int) in.uint()], (int) in.sint()));
+            byDay.put(key, items);
+        }
+        return byDay;
+    }
+
+    private static int intern(Map<String, Integer> strings, String s) {
+        return strings.computeIfAbsent(s, k -> strings.size());
+    }
+
+    private static void day(Out out, Map<String, Integer> strings, YearMonth month, String key) {
+        int dom = dayOfMonth(month, key);
+        out.uint(dom);
+        if (dom == 0) out.uint(intern(strings, key));
+    }
+
+    private static String day(In in, String[] strings, LocalDate first) throws IOException {
+        int dom = (int) in.uint();
+        return dom == 0 ? strings[(int) in.uint()] : first.plusDays(dom - 1L).toString();
+    }
+
+    // day of month if key is the canonical ISO form of a date in month, else 0
+    private static int dayOfMonth(YearMonth month, String key) {
+        if (key.length() != 10 || key.charAt(7) != '-' || !isInMonth(month, key)) return 0;
+        char a = key.charAt(8), b = key.charAt(9);
+        if (a < '0' || a > '3' || b < '0' || b > '9') return 0;
+        int dom = (a - '0') * 10 + (b - '0');
+        return dom >= 1 && dom <= month.lengthOfMonth() ? dom : 0;
+    }
+
+    private static boolean isInMonth(YearMonth month, String key) {
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') return false;
+            year = year * 10 + (c - '0');
+        }
+        char m1 = key.charAt(5), m2 = key.charAt(6);
+        return key.charAt(4) == '-' && year == month.getYear()
+                && m1 >= '0' && m1 <= '1' && m2 >= '0' && m2 <= '9'
+                && (m1 - '0') * 10 + (m2 - '0') == month.getMonthValue();
+    }
+
+    private static void ids(Out out, Map<String, Integer> strings, Collection<String> ids) {
+        out.uint(ids.size());
+        for (String id : ids) out.uint(intern(strings, id));
+    }
+
+    private static void ids(In in, String[] strings, Collection<String> into) throws IOException {
+        int n = in.count();
+        for (int i = 0; i < n; i++) into.add(strings[(int) in.uint()]);
+    }
+
+    private static final class Out extends ByteArrayOutputStream {
+        Out(int size) {
+            super(size);
+        }
+
+        byte[] buf() {
+            return buf;
+        }
+
+        void u8(int v) {
+            write(v);
+        }
+
+        void bytes(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        void uint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void sint(long v) {
+            uint((v << 1) ^ (v >> 63));
+        }
+    }
+
+    private static final class In {
+        private final byte[] b;
+        private int pos;
+
+        In(byte[] b) {
+            this.b = b;
+        }
+
+        int u8() throws IOException {
+            if (pos >= b.length) throw new IOException("Truncated month segment");
+            return b[pos++] & 0xFF;
+        }
+
+        long uint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int x = u8();
+                v |= (long) (x & 0x7F) << shift;
+                if ((x & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint in month segment");
+        }
+
+        // a count can never exceed the bytes left, which guards allocations against corrupt input
+        int count() throws IOException {
+            long v = uint();
+            if (v > b.length - pos) throw new IOException("Corrupt count in month segment");
+            return (int) v;
+        }
+
+        long sint() throws IOException {
+            long v = uint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String utf8(int len) throws IOException {
+            if (len < 0 || pos + len > b.length) throw new IOException("Truncated month segment");
+            String s = new String(b, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
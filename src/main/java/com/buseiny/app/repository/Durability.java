@@ -0,0 +1,10 @@
+package com.buseiny.app.repository;
+
+/**
+ * When a committed change counts as persisted, configured with {@code app.persistence.durability}.
+ */
+public enum Durability {
+    SYNC,   // every entry is fsynced before its caller is released
+    GROUP,  // entries arriving within app.persistence.groupCommitMs share one fsync
+    ASYNC   // callers are released at once, the writer fsyncs in the background
+}
@@ -0,0 +1,18 @@
+package com.buseiny.app.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * One journal record: the domain event that happened and the new value
+ * of every state section it touched, keyed by {@link com.buseiny.app.model.StateSection#id()}.
+ * Replaying an entry only overwrites sections, so it does not depend on the clock and is idempotent.
+ */
+public record JournalEntry(
+        long seq,
+        LocalDateTime at,
+        String event,
+        Map<String, JsonNode> changes
+) {}
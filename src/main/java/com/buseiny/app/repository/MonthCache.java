@@ -0,0 +1,174 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.DailyLog;
+import com.buseiny.app.model.MonthSegmentedMap;
+import com.buseiny.app.model.StateSection;
+import com.buseiny.app.model.UserState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds how many months of day logs, history extras and ledger stay in memory.
+ * Months of the recent window (current and previous month, which cover the current week)
+ * are always resident; older months are read from the {@link SegmentedStore} when accessed
+ * and the least recently used ones are unloaded again once more than {@code capacity} months
+ * are resident. Months with changes that are not yet in a written snapshot are never unloaded.
+ */
+@Slf4j
+class MonthCache implements MonthSegmentedMap.Loader {
+
+    /** Change marks of the months in a snapshot, see {@link MonthSegmentedMap#changeMark}. */
+    record Marks(Map<String, Long> daily, Map<String, Long> extras, Map<String, Long> ledger) {}
+
+    private final SegmentedStore store;
+    private final MonthSegmentedMap<DailyLog> daily;
+    private final MonthSegmentedMap<List<HistoryDTO.Item>> extras;
+    private final MonthSegmentedMap<List<HistoryDTO.Item>> ledger;
+    private final int capacity;
+    private final Clock clock;
+    // guards the cache and the maps; a lock rather than a monitor, since loading reads a file
+    private final ReentrantLock lock = new ReentrantLock();
+    // resident months in access order, least recently used first
+    private final LinkedHashMap<String, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long loads;
+    private long evictions;
+
+    MonthCache(SegmentedStore store, UserState user, int capacity, Clock clock) {
+        this.store = store;
+        this.daily = user.getDaily();
+        this.extras = user.getHistoryExtras();
+        this.ledger = user.getLedger();
+        this.capacity = Math.max(capacity, 1);
+        this.clock = clock;
+        lock.lock();
+        try {
+            daily.residentMonths().forEach(m -> lru.put(m, Boolean.TRUE));
+            extras.residentMonths().forEach(m -> lru.put(m, Boolean.TRUE));
+            ledger.residentMonths().forEach(m -> lru.put(m, Boolean.TRUE));
+            daily.setLoader(this);
+            extras.setLoader(this);
+            ledger.setLoader(this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** First month of the recent window, as {@code yyyy-MM}. */
+    static String recentFrom(Clock clock) {
+        return YearMonth.now(clock).minusMonths(1).toString();
+    }
+
+    @Override
+    public void load(String month) {
+        lock.lock();
+        try {
+            var seg = store.readMonth(month);
+            daily.loadMonth(month, seg.daily());
+            extras.loadMonth(month, seg.historyExtras());
+            ledger.loadMonth(month, seg.ledger());
+            loads++;
+            log.debug("Loaded month {} ({} resident, {} loads, {} evictions)", month, lru.size() + 1, loads, evictions);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load month " + month, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void accessed(String month) {
+        lock.lock();
+        try {
+            lru.put(month, Boolean.TRUE);
+            if (lru.size() > capacity) evict(month);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Lock lock() {
+        return lock;
+    }
+
+    private void evict(String current) {
+        String recent = recentFrom(clock);
+        int excess = lru.size() - capacity;
+        for (var it = lru.keySet().iterator(); excess > 0 && it.hasNext(); ) {
+            String m = it.next();
+            if (m.equals(current) || m.compareTo(recent) >= 0) continue;
+            if (daily.changeMark(m) != 0 || extras.changeMark(m) != 0 || ledger.changeMark(m) != 0) continue;
+            daily.unloadMonth(m);
+            extras.unloadMonth(m);
+            ledger.unloadMonth(m);
+            it.remove();
+            evictions++;
+            excess--;
+        }
+    }
+
+    /** Marks of the months holding {@code sections}; pass them to {@link #saved} once their files are written. */
+    Marks marks(Collection<StateSection> sections) {
+        lock.lock();
+        try {
+            Map<String, Long> d = new HashMap<>();
+            Map<String, Long> x = new HashMap<>();
+            Map<String, Long> l = new HashMap<>();
+            for (var s : sections) {
+                var kind = s.kind();
+                if (kind != StateSection.Kind.DAY && kind != StateSection.Kind.EXTRAS && kind != StateSection.Kind.LEDGER) continue;
+                String month = MonthSegmentedMap.monthOf(s.key());
+                d.put(month, daily.changeMark(month));
+                x.put(month, extras.changeMark(month));
+                l.put(month, ledger.changeMark(month));
+            }
+            return new Marks(d, x, l);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Marks of every month, for a snapshot of the whole state. */
+    Marks marksAll() {
+        lock.lock();
+        try {
+            Set<String> months = new TreeSet<>(daily.months());
+            months.addAll(extras.months());
+            months.addAll(ledger.months());
+            List<StateSection> sections = new ArrayList<>();
+            months.forEach(m -> sections.add(StateSection.day(m + "-01")));
+            return marks(sections);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Lets the months in {@code marks} be unloaded unless they changed after the marks were taken. */
+    void saved(Marks marks) {
+        lock.lock();
+        try {
+            marks.daily().forEach(daily::markSaved);
+            marks.extras().forEach(extras::markSaved);
+            marks.ledger().forEach(ledger::markSaved);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int resident() {
+        lock.lock();
+        try {
+            return lru.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.buseiny.app.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/** Serializes one {@link SegmentedStore.MonthSegment} into the bytes of its file. */
+interface MonthCodec {
+
+    /** File extension including the dot, e.g. {@code .json}. */
+    String extension();
+
+    byte[] encode(String month, SegmentedStore.MonthSegment segment) throws IOException;
+
+    SegmentedStore.MonthSegment decode(String month, byte[] bytes) throws IOException;
+
+    static MonthCodec of(SnapshotFormat format, ObjectMapper mapper) {
+        return switch (format) {
+            case JSON -> new Json(mapper);
+            case BINARY -> new BinaryMonthCodec();
+        };
+    }
+
+    record Json(ObjectMapper mapper) implements MonthCodec {
+        @Override
+        public String extension() {
+            return ".json";
+        }
+
+        @Override
+        public byte[] encode(String month, SegmentedStore.MonthSegment segment) throws IOException {
+            return mapper.writeValueAsBytes(segment);
+        }
+
+        @Override
+        public SegmentedStore.MonthSegment decode(String month, byte[] bytes) throws IOException {
+            return mapper.readValue(bytes, SegmentedStore.MonthSegment.class);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.buseiny.app.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated thread that owns journal I/O. Entries queued while a batch is open
+ * are written together and made durable with a single fsync (group commit).
+ */
+@Slf4j
+class PersistenceWriter implements AutoCloseable {
+
+    private record Task(JournalEntry entry, long rotateTo, CompletableFuture<Void> done) {}
+
+    private final StateJournal journal;
+    private final Durability durability;
+    private final long groupCommitNanos;
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    PersistenceWriter(StateJournal journal, Durability durability, long groupCommitMs) {
+        this.journal = journal;
+        this.durability = durability;
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitMs);
+        this.thread = new Thread(this::run, "state-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an entry. The returned future completes once the entry is fsynced,
+     * or right away for {@link Durability#ASYNC}.
+     */
+    CompletableFuture<Void> submit(JournalEntry entry) {
+        var done = new CompletableFuture<Void>();
+        queue.add(new Task(entry, 0, done));
+        if (durability == Durability.ASYNC) {
+            done.whenComplete((v, e) -> {
+                if (e != null) log.error("Async journal write of #{} failed", entry.seq(), e);
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+        return done;
+    }
+
+    /** Starts a new journal segment at {@code nextSeq} once everything queued before is written. */
+    void rotate(long nextSeq) {
+        queue.add(new Task(null, nextSeq, new CompletableFuture<>()));
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Task first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                if (durability != Durability.SYNC) {
+                    long deadline = System.nanoTime() + groupCommitNanos;
+                    long left;
+                    while ((left = deadline - System.nanoTime()) > 0) {
+                        Task next = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                }
+                queue.drainTo(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Task> batch) {
+        try {
+            for (var t : batch) {
+                if (t.entry() != null) journal.write(t.entry());
+                else journal.rotate(t.rotateTo());
+            }
+            journal.sync();
+            for (var t : batch) t.done().complete(null);
+            log.debug("Group commit of {} journal records", batch.size());
+        } catch (IOException | RuntimeException e) {
+            for (var t : batch) t.done().completeExceptionally(e);
+        }
+    }
+
+    /** Writes what is still queued and stops the thread. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
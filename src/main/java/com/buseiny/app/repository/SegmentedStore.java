@@ -0,0 +1,263 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.*;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot stored as one file per section, so a snapshot only rewrites what changed:
+ * <pre>
+ *   meta.json          installedAt, lastProcessedWeekStart, journalSeq
+ *   user.json          profile, balance, streaks, gifts, today's roulette, ledger start
+ *   goals.json, shop.json, daily-tasks.json, purchases.json, weeks.json (closed week summaries)
+ *   checkpoints.json   balance of the recalculation replay at week starts
+ *   months/yyyy-MM.bin   day logs, history extras and ledger of one month ({@code .json} with the JSON format)
+ * </pre>
+ * {@code meta.json} is written last and acts as the commit point of a snapshot. It also indexes
+ * the stored months with their entry counts, so months outside the recent window can be left
+ * on disk until {@link MonthCache} loads them.
+ */
+@Slf4j
+class SegmentedStore {
+    static final int VERSION = 2;
+    static final String META = "meta.json";
+    private static final String USER = "user.json";
+    private static final String GOALS = "goals.json";
+    private static final String SHOP = "shop.json";
+    private static final String DAILY_TASKS = "daily-tasks.json";
+    private static final String PURCHASES = "purchases.json";
+    private static final String WEEKS = "weeks.json";
+    private static final String CHECKPOINTS = "checkpoints.json";
+    private static final String MONTHS = "months";
+
+    record Meta(int version, long journalSeq, LocalDateTime installedAt, LocalDate lastProcessedWeekStart,
+                Map<String, MonthIndex> months) {}
+    record MonthIndex(int days, int extras, int ledger) {}
+    record UserSegment(String username, String avatarUrl, int balance, Map<String, Integer> streaks,
+                       List<Gift> gifts, RouletteState todayRoulette, LocalDate ledgerSince, int ledgerOpening) {}
+    // purchases were kept per month up to version 1; months written before the ledger have none
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record MonthSegment(Map<String, DailyLog> daily, Map<String, List<HistoryDTO.Item>> historyExtras,
+                        List<Purchase> purchases, Map<String, List<HistoryDTO.Item>> ledger) {}
+
+    private final Path dir;
+    private final ObjectMapper mapper;
+    // codec months are written with; the other one still reads files written before a format switch
+    private final MonthCodec codec;
+    private final MonthCodec other;
+
+    SegmentedStore(Path dir, ObjectMapper mapper, SnapshotFormat format) {
+        this.dir = dir;
+        this.mapper = mapper;
+        this.codec = MonthCodec.of(format, mapper);
+        this.other = MonthCodec.of(format == SnapshotFormat.JSON ? SnapshotFormat.BINARY : SnapshotFormat.JSON, mapper);
+    }
+
+    boolean exists() {
+        return Files.exists(dir.resolve(META));
+    }
+
+    int version() throws IOException {
+        return readMeta().version();
+    }
+
+    /**
+     * Loads the stored state. Months from {@code residentFrom} on are read right away, older ones
+     * are only declared to the maps with their entry counts. Version 1 stores have no month index
+     * and are read completely.
+     */
+    AppState load(String residentFrom) throws IOException {
+        var meta = readMeta();
+        if (meta.version() > VERSION) throw new IOException("Unsupported state layout version " + meta.version());
+        AppState s = new AppState();
+        s.setInstalledAt(meta.installedAt());
+        s.setLastProcessedWeekStart(meta.lastProcessedWeekStart());
+        s.setJournalSeq(meta.journalSeq());
+        s.setGoals(readList(GOALS, OneTimeGoal.class));
+        s.setShop(readList(SHOP, ShopItem.class));
+        s.setDailyTasks(readList(DAILY_TASKS, DailyTaskDef.class));
+        if (Files.exists(dir.resolve(WEEKS))) {
+            s.setWeekSummaries(mapper.readValue(dir.resolve(WEEKS).toFile(), new TypeReference<Map<String, WeekSummary>>() {}));
+        }
+        if (Files.exists(dir.resolve(CHECKPOINTS))) {
+            s.setReplayCheckpoints(mapper.readValue(dir.resolve(CHECKPOINTS).toFile(), new TypeReference<Map<String, Integer>>() {}));
+        }
+
+        UserState u = s.getAnna();
+        var user = mapper.readValue(dir.resolve(USER).toFile(), UserSegment.class);
+        u.setUsername(user.username());
+        u.setAvatarUrl(user.avatarUrl());
+        u.setBalance(user.balance());
+        u.setStreaks(user.streaks() == null ? new HashMap<>() : new HashMap<>(user.streaks()));
+        u.setGifts(user.gifts() == null ? new ArrayList<>() : new ArrayList<>(user.gifts()));
+        u.setTodayRoulette(user.todayRoulette());
+        u.setLedgerSince(user.ledgerSince());
+        u.setLedgerOpening(user.ledgerOpening());
+
+        if (meta.version() < 2) {
+            List<Purchase> purchases = new ArrayList<>();
+            for (String month : storedMonths()) {
+                var seg = readMonth(month);
+                u.getDaily().loadMonth(month, seg.daily());
+                u.getHistoryExtras().loadMonth(month, seg.historyExtras());
+                u.getLedger().loadMonth(month, seg.ledger());
+                if (seg.purchases() != null) purchases.addAll(seg.purchases());
+            }
+            u.setPurchases(purchases);
+        } else {
+            u.setPurchases(readList(PURCHASES, Purchase.class));
+            var index = meta.months() == null ? Map.<String, MonthIndex>of() : meta.months();
+            for (var e : index.entrySet()) {
+                String month = e.getKey();
+                if (month.compareTo(residentFrom) >= 0) {
+                    var seg = readMonth(month);
+                    u.getDaily().loadMonth(month, seg.daily());
+                    u.getHistoryExtras().loadMonth(month, seg.historyExtras());
+                    u.getLedger().loadMonth(month, seg.ledger());
+                } else {
+                    u.getDaily().offloadMonth(month, e.getValue().days());
+                    u.getHistoryExtras().offloadMonth(month, e.getValue().extras());
+                    u.getLedger().offloadMonth(month, e.getValue().ledger());
+                }
+            }
+        }
+        s.drainDirty();
+        return s;
+    }
+
+    /** Reads one month segment; a month that was never written is empty. */
+    MonthSegment readMonth(String month) throws IOException {
+        var c = codec;
+        Path p = monthPath(month, c);
+        if (!Files.exists(p)) {
+            c = other;
+            p = monthPath(month, c);
+        }
+        if (!Files.exists(p)) return new MonthSegment(Map.of(), Map.of(), null, Map.of());
+        var seg = c.decode(month, Files.readAllBytes(p));
+        return new MonthSegment(seg.daily() == null ? Map.of() : seg.daily(),
+                seg.historyExtras() == null ? Map.of() : seg.historyExtras(), seg.purchases(),
+                seg.ledger() == null ? Map.of() : seg.ledger());
+    }
+
+    /** Serializes the files holding {@code sections} plus meta.json; nothing is written yet. */
+    Map<String, byte[]> encode(AppState s, Collection<StateSection> sections) throws IOException {
+        var u = s.getAnna();
+        Set<String> files = new LinkedHashSet<>();
+        Set<String> months = new TreeSet<>();
+        for (var section : sections) {
+            switch (section.kind()) {
+                case META -> { }
+                case GOALS -> files.add(GOALS);
+                case SHOP -> files.add(SHOP);
+                case DAILY_TASKS -> files.add(DAILY_TASKS);
+                case PROFILE, BALANCE, STREAKS, GIFTS, ROULETTE, LEDGER_START -> files.add(USER);
+                case DAY, EXTRAS, LEDGER -> months.add(MonthSegmentedMap.monthOf(section.key()));
+                case PURCHASE -> files.add(PURCHASES);
+                case WEEK -> files.add(WEEKS);
+                case CHECKPOINT -> files.add(CHECKPOINTS);
+            }
+        }
+        Map<String, byte[]> out = new LinkedHashMap<>();
+        for (String f : files) {
+            Object value = switch (f) {
+                case GOALS -> s.getGoals();
+                case SHOP -> s.getShop();
+                case DAILY_TASKS -> s.getDailyTasks();
+                case PURCHASES -> u.getPurchases();
+                case WEEKS -> s.getWeekSummaries();
+                case CHECKPOINTS -> s.getReplayCheckpoints();
+                default -> new UserSegment(u.getUsername(), u.getAvatarUrl(), u.getBalance(), u.getStreaks(),
+                        u.getGifts(), u.getTodayRoulette(), u.getLedgerSince(), u.getLedgerOpening());
+            };
+            out.put(f, mapper.writeValueAsBytes(value));
+        }
+        for (String month : months) {
+            var seg = new MonthSegment(u.getDaily().month(month), u.getHistoryExtras().month(month), null,
+                    u.getLedger().month(month));
+            out.put(MONTHS + "/" + month + codec.extension(), codec.encode(month, seg));
+        }
+        Map<String, MonthIndex> index = new TreeMap<>();
+        Set<String> stored = new TreeSet<>(u.getDaily().months());
+        stored.addAll(u.getHistoryExtras().months());
+        stored.addAll(u.getLedger().months());
+        for (String month : stored) {
+            index.put(month, new MonthIndex(u.getDaily().monthSize(month), u.getHistoryExtras().monthSize(month),
+                    u.getLedger().monthSize(month)));
+        }
+        out.put(META, mapper.writeValueAsBytes(
+                new Meta(VERSION, s.getJournalSeq(), s.getInstalledAt(), s.getLastProcessedWeekStart(), index)));
+        return out;
+    }
+
+    /** Serializes every file, e.g. when migrating from the single-file layout. */
+    Map<String, byte[]> encodeAll(AppState s) throws IOException {
+        var u = s.getAnna();
+        List<StateSection> all = new ArrayList<>(List.of(StateSection.GOALS, StateSection.SHOP,
+                StateSection.DAILY_TASKS, StateSection.BALANCE, StateSection.purchase(0)));
+        u.getDaily().months().forEach(m -> all.add(StateSection.day(m + "-01")));
+        u.getHistoryExtras().months().forEach(m -> all.add(StateSection.extras(m + "-01")));
+        u.getLedger().months().forEach(m -> all.add(StateSection.ledger(m + "-01")));
+        if (!s.getWeekSummaries().isEmpty()) all.add(new StateSection(StateSection.Kind.WEEK, null));
+        if (!s.getReplayCheckpoints().isEmpty()) all.add(new StateSection(StateSection.Kind.CHECKPOINT, null));
+        return encode(s, all);
+    }
+
+    /** Writes the files atomically one by one, meta.json last. */
+    void write(Map<String, byte[]> files) throws IOException {
+        Files.createDirectories(dir.resolve(MONTHS));
+        byte[] meta = null;
+        for (var e : files.entrySet()) {
+            if (e.getKey().equals(META)) meta = e.getValue();
+            else {
+                AtomicFiles.write(dir.resolve(e.getKey()), e.getValue());
+                if (e.getKey().startsWith(MONTHS + "/")) Files.deleteIfExists(otherFormat(e.getKey()));
+            }
+        }
+        if (meta != null) AtomicFiles.write(dir.resolve(META), meta);
+        log.debug("Wrote {} state segments to {}", files.size(), dir);
+    }
+
+    private Meta readMeta() throws IOException {
+        return mapper.readValue(dir.resolve(META).toFile(), Meta.class);
+    }
+
+    private List<String> storedMonths() throws IOException {
+        Path months = dir.resolve(MONTHS);
+        if (!Files.isDirectory(months)) return List.of();
+        try (Stream<Path> files = Files.list(months)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".json"))
+                    .map(n -> n.substring(0, n.length() - ".json".length()))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path monthPath(String month, MonthCodec c) {
+        return dir.resolve(MONTHS).resolve(month + c.extension());
+    }
+
+    private Path otherFormat(String monthFile) {
+        String name = monthFile.substring(0, monthFile.length() - codec.extension().length());
+        return dir.resolve(name + other.extension());
+    }
+
+    private <T> List<T> readList(String file, Class<T> type) throws IOException {
+        Path p = dir.resolve(file);
+        if (!Files.exists(p)) return new ArrayList<>();
+        List<T> list = mapper.readerForListOf(type).readValue(p.toFile());
+        return new ArrayList<>(list);
+    }
+}
@@ -0,0 +1,10 @@
+package com.buseiny.app.repository;
+
+/**
+ * Encoding of the month segments of a snapshot, configured with {@code app.snapshot.format}.
+ * Either format is read back, so switching converts each month the next time it is written.
+ */
+public enum SnapshotFormat {
+    JSON,   // months/yyyy-MM.json, readable and hand-editable
+    BINARY  // months/yyyy-MM.bin, see BinaryMonthCodec
+}
@@ -0,0 +1,131 @@
+package com.buseiny.app.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of {@link JournalEntry} records, one JSON object per line.
+ * The journal is split into segment files named after the first sequence number they hold,
+ * so compaction after a snapshot is a plain file delete.
+ */
+@Slf4j
+class StateJournal implements AutoCloseable {
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private FileChannel current;
+    private long currentStart;
+
+    StateJournal(Path dir, ObjectMapper mapper) throws IOException {
+        this.dir = dir;
+        this.reader = mapper.readerFor(JournalEntry.class);
+        this.writer = mapper.writerFor(JournalEntry.class).without(SerializationFeature.INDENT_OUTPUT);
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * Feeds every entry with seq greater than {@code afterSeq} to the consumer, in order.
+     * A torn last line (crash during append) ends the replay of its segment.
+     * @return the highest sequence number seen, or {@code afterSeq} if none
+     */
+    synchronized long replay(long afterSeq, Consumer<JournalEntry> consumer) throws IOException {
+        long last = afterSeq;
+        for (Path segment : segments()) {
+            try (BufferedReader r = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    JournalEntry e;
+                    try {
+                        e = reader.readValue(line);
+                    } catch (JsonProcessingException ex) {
+                        log.warn("Ignoring torn journal record in {}", segment.getFileName());
+                        break;
+                    }
+                    if (e.seq() <= last) continue;
+                    consumer.accept(e);
+                    last = e.seq();
+                }
+            }
+        }
+        return last;
+    }
+
+    /** Closes the active segment and starts a new one whose first record will be {@code nextSeq}. */
+    synchronized void rotate(long nextSeq) throws IOException {
+        if (current != null) current.close();
+        currentStart = nextSeq;
+        current = FileChannel.open(segmentPath(nextSeq),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        AtomicFiles.syncDirectory(dir);
+    }
+
+    /** Writes the entry to the active segment; it is durable only after the next {@link #sync()}. */
+    synchronized void write(JournalEntry entry) throws IOException {
+        if (current == null) rotate(entry.seq());
+        byte[] line = writer.writeValueAsBytes(entry);
+        ByteBuffer buf = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+        while (buf.hasRemaining()) current.write(buf);
+    }
+
+    synchronized void sync() throws IOException {
+        if (current != null) current.force(false);
+    }
+
+    /** Deletes closed segments whose records all have seq below {@code seq}. */
+    synchronized void deleteBefore(long seq) throws IOException {
+        List<Path> all = segments();
+        for (int i = 0; i < all.size(); i++) {
+            long start = startOf(all.get(i));
+            if (start == currentStart && current != null) break;
+            long nextStart = i + 1 < all.size() ? startOf(all.get(i + 1)) : Long.MAX_VALUE;
+            if (nextStart <= seq) Files.deleteIfExists(all.get(i));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (current != null) current.close();
+        current = null;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> list = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                            && p.getFileName().toString().endsWith(SUFFIX))
+                    .toList());
+            list.sort((a, b) -> Long.compare(startOf(a), startOf(b)));
+            return list;
+        }
+    }
+
+    private Path segmentPath(long startSeq) {
+        return dir.resolve(String.format("%s%020d%s", PREFIX, startSeq, SUFFIX));
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
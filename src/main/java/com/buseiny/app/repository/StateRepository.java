@@ -1,23 +1,41 @@
 package com.buseiny.app.repository;
 
+import com.buseiny.app.dto.HistoryDTO;
 import com.buseiny.app.model.*;
 import com.buseiny.app.model.DailyTaskDef;
 import com.buseiny.app.model.DailyTaskKind;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 import com.buseiny.app.util.TimeUtil;
 
@@ -25,16 +43,75 @@ import com.buseiny.app.util.TimeUtil;
 @Slf4j
 public class StateRepository {
 
+    // single-file state of older versions, imported once into stateDir
     @Value("${app.dataFile}")
     private String dataFile;
 
+    @Value("${app.stateDir:data/state}")
+    private String stateDir;
+
+    @Value("${app.snapshot.format:BINARY}")
+    private SnapshotFormat snapshotFormat;
+
+    // months of history kept in memory, see MonthCache
+    @Value("${app.monthCacheSize:12}")
+    private int monthCacheSize;
+
+    @Value("${app.journal.dir:data/journal}")
+    private String journalDir;
+
+    // journal entries between two snapshots
+    @Value("${app.journal.snapshotEvery:500}")
+    private int snapshotEvery;
+
+    @Value("${app.persistence.durability:GROUP}")
+    private Durability durability;
+
+    @Value("${app.persistence.groupCommitMs:5}")
+    private long groupCommitMs;
+
     private final ObjectMapper mapper;
-    private AppState state;
+    private volatile AppState state;
+    // read-only copy of the state as of the last commit, see view()
+    private final AtomicReference<AppState> published = new AtomicReference<>();
+    // called on the committing thread with each newly published view and the sections it changed
+    private final List<BiConsumer<AppState, Set<StateSection>>> publishListeners = new CopyOnWriteArrayList<>();
+
+    // "now" for journal entries, a fresh state and the recent month window
+    private final Clock clock;
+
+    private SegmentedStore store;
+    private MonthCache months;
+    private StateJournal journal;
+    private PersistenceWriter writer;
+    // sections journaled since the last snapshot; the next snapshot rewrites only their files
+    private final Set<StateSection> unsnapshotted = new LinkedHashSet<>();
+    private long seq;
+    private int sinceSnapshot;
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "state-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    // newest snapshot waiting for the snapshot thread; older ones are superseded, not written
+    private final AtomicReference<PendingSnapshot> pendingSnapshot = new AtomicReference<>();
+
+    private record PendingSnapshot(long seq, Map<String, byte[]> files, List<MonthCache.Marks> marks) {
+        PendingSnapshot merge(PendingSnapshot newer) {
+            Map<String, byte[]> all = new LinkedHashMap<>(files);
+            all.putAll(newer.files());
+            List<MonthCache.Marks> allMarks = new ArrayList<>(marks);
+            allMarks.addAll(newer.marks());
+            return new PendingSnapshot(newer.seq(), all, allMarks);
+        }
+    }
 
-    @Value("${app.timezone}")
-    private String timezone;
+    private record Meta(LocalDateTime installedAt, LocalDate lastProcessedWeekStart) {}
+    private record Profile(String username, String avatarUrl) {}
+    private record LedgerStart(LocalDate since, int opening) {}
 
-    public StateRepository() {
+    public StateRepository(Clock clock) {
+        this.clock = clock;
         mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
         mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
@@ -44,13 +121,29 @@ public class StateRepository {
 
     @PostConstruct
     public synchronized void init() throws IOException {
-        File f = new File(dataFile);
-        if (!f.getParentFile().exists()) f.getParentFile().mkdirs();
-        if (f.exists()) {
-            state = mapper.readValue(f, AppState.class);
+        File legacy = new File(dataFile);
+        store = new SegmentedStore(Path.of(stateDir), mapper, snapshotFormat);
+        boolean imported = false;
+        boolean migrate = !store.exists() || store.version() < SegmentedStore.VERSION;
+        if (store.exists()) {
+            state = store.load(MonthCache.recentFrom(clock));
+        } else if (legacy.exists()) {
+            imported = true;
+            state = mapper.readValue(legacy, AppState.class);
+            log.info("Migrating {} to segmented state in {}", dataFile, stateDir);
         } else {
             state = freshState();
-            save();
+        }
+        state.drainDirty();
+        months = new MonthCache(store, state.getAnna(), monthCacheSize, clock);
+        journal = new StateJournal(Path.of(journalDir), mapper);
+        int[] replayed = {0};
+        seq = journal.replay(state.getJournalSeq(), e -> {
+            apply(e);
+            replayed[0]++;
+        });
+        if (replayed[0] > 0) {
+            log.info("Replayed {} journal entries up to #{}", replayed[0], seq);
         }
         if (state.getAnna().getAvatarUrl() == null) {
             state.getAnna().setAvatarUrl("/assets/avatar.png");
@@ -67,19 +160,50 @@ public class StateRepository {
         if (state.getAnna().getGifts() == null) {
             state.getAnna().setGifts(new ArrayList<>());
         }
-        save();
+        if (state.getAnna().getLedgerSince() == null) {
+            // days up to today keep their derived history; the ledger covers every day after
+            state.getAnna().setLedgerSince(LocalDate.now(clock).plusDays(1));
+            state.getAnna().setLedgerOpening(state.getAnna().getBalance());
+        }
+        journal.rotate(seq + 1);
+        state.setJournalSeq(seq);
+        var dirty = state.drainDirty();
+        writeSnapshot(migrate
+                ? new PendingSnapshot(seq, store.encodeAll(state), List.of(months.marksAll()))
+                : new PendingSnapshot(seq, store.encode(state, dirty), List.of(months.marks(dirty))));
+        if (imported) {
+            Files.move(legacy.toPath(), legacy.toPath().resolveSibling(legacy.getName() + ".migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        published.set(state.freeze(null, Set.of(), seq));
+        writer = new PersistenceWriter(journal, durability, groupCommitMs);
+        log.info("Persistence ready: durability {}, journal at #{}, {} of {} months resident",
+                durability, seq, months.resident(), state.getAnna().getDaily().months().size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        writer.close();
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
     }
 
     private AppState freshState() {
         AppState s = new AppState();
-        var zone = TimeUtil.zone(timezone);
-        s.setInstalledAt(LocalDateTime.now(zone));
-        s.setLastProcessedWeekStart(TimeUtil.weekStartMonday(LocalDate.now(zone)));
+        s.setInstalledAt(LocalDateTime.now(clock));
+        s.setLastProcessedWeekStart(TimeUtil.weekStartMonday(LocalDate.now(clock)));
         UserState u = new UserState();
         u.setUsername("Anna");
         u.setBalance(0);
         u.setAvatarUrl("/assets/avatar.png");
         u.setGifts(new ArrayList<>());
+        u.setLedgerSince(LocalDate.now(clock));
+        u.setLedgerOpening(0);
         s.setAnna(u);
         return s;
     }
@@ -108,11 +232,195 @@ public class StateRepository {
         state.setDailyTasks(defs);
     }
 
-    public synchronized AppState get() { return state; }
+    /** The live state; only the thread holding the writer lock may read or change it. */
+    public AppState get() { return state; }
 
-    public synchronized void save() throws IOException {
-        mapper.writeValue(new File(dataFile), state);
-        log.debug("State persisted to {}", dataFile);
+    /**
+     * Read-only state as of the last commit. Its {@code journalSeq} is the number of that commit's
+     * journal entry, so it can serve as a version. Safe to read from any thread without locking.
+     */
+    public AppState view() { return published.get(); }
+
+    /**
+     * Registers {@code listener} to run after every commit with the new view and the sections the commit
+     * changed. It runs on the committing thread before other commits, so it can maintain derived data
+     * incrementally; it must be quick and must not change the state.
+     */
+    public void onPublish(BiConsumer<AppState, Set<StateSection>> listener) {
+        publishListeners.add(listener);
+    }
+
+    /**
+     * Hands the sections marked dirty in {@link AppState} to the writer thread as one {@code event} entry.
+     * Must be called by the thread that made the change while it still excludes other writers,
+     * so that entries are numbered in the order the changes were applied.
+     * Every {@code snapshotEvery} entries the files of the sections changed since the previous
+     * snapshot are queued for the snapshot thread.
+     * @return completes when the entry satisfies the configured {@link Durability}
+     */
+    public synchronized CompletableFuture<Void> commit(String event) throws IOException {
+        var dirty = state.drainDirty();
+        if (dirty.isEmpty()) return CompletableFuture.completedFuture(null);
+        Map<String, JsonNode> changes = new LinkedHashMap<>();
+        for (var s : dirty) changes.put(s.id(), toTree(sectionValue(s)));
+        unsnapshotted.addAll(dirty);
+        var durable = writer.submit(new JournalEntry(++seq, LocalDateTime.now(clock), event, changes));
+        var view = state.freeze(published.get(), dirty, seq);
+        published.set(view);
+        for (var l : publishListeners) {
+            try {
+                l.accept(view, dirty);
+            } catch (RuntimeException e) {
+                log.error("Publish listener failed for #{}", seq, e);
+            }
+        }
+        log.debug("Journaled #{} {} {}", seq, event, changes.keySet());
+        if (++sinceSnapshot >= snapshotEvery) {
+            writer.rotate(seq + 1);
+            state.setJournalSeq(seq);
+            var snapshot = new PendingSnapshot(seq, store.encode(state, unsnapshotted),
+                    List.of(months.marks(unsnapshotted)));
+            unsnapshotted.clear();
+            sinceSnapshot = 0;
+            if (pendingSnapshot.getAndAccumulate(snapshot, (old, next) -> old == null ? next : old.merge(next)) == null) {
+                snapshotExecutor.execute(this::writePendingSnapshot);
+            }
+        }
+        return durable;
     }
-}
 
+    /**
+     * The whole state as one JSON document in the single-file format of {@code app.dataFile},
+     * which is imported on a start with an empty {@code app.stateDir}. Serializes the published
+     * view, so it needs no lock; loads every stored month.
+     */
+    public byte[] exportJson() throws IOException {
+        return mapper.writeValueAsBytes(view());
+    }
+
+    /** Blocks until a future returned by {@link #commit(String)} completes; call it without holding locks. */
+    public void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Journal write failed", e.getCause());
+        }
+    }
+
+    private void writePendingSnapshot() {
+        var snapshot = pendingSnapshot.getAndSet(null);
+        if (snapshot == null) return;
+        try {
+            writeSnapshot(snapshot);
+        } catch (IOException e) {
+            log.error("Failed to write snapshot #{}", snapshot.seq(), e);
+        }
+    }
+
+    private void writeSnapshot(PendingSnapshot snapshot) throws IOException {
+        store.write(snapshot.files());
+        snapshot.marks().forEach(months::saved);
+        journal.deleteBefore(snapshot.seq() + 1);
+        log.debug("State persisted to {} at #{}", stateDir, snapshot.seq());
+    }
+
+    // --- sections ---
+
+    private JsonNode toTree(Object value) {
+        return value == null ? NullNode.getInstance() : mapper.valueToTree(value);
+    }
+
+    private Object sectionValue(StateSection s) {
+        var u = state.getAnna();
+        return switch (s.kind()) {
+            case META -> new Meta(state.getInstalledAt(), state.getLastProcessedWeekStart());
+            case GOALS -> state.getGoals();
+            case SHOP -> state.getShop();
+            case DAILY_TASKS -> state.getDailyTasks();
+            case PROFILE -> new Profile(u.getUsername(), u.getAvatarUrl());
+            case BALANCE -> u.getBalance();
+            case STREAKS -> u.getStreaks();
+            case DAY -> u.getDaily().get(s.key());
+            case EXTRAS -> u.getHistoryExtras().get(s.key());
+            case LEDGER -> u.getLedger().get(s.key());
+            case LEDGER_START -> new LedgerStart(u.getLedgerSince(), u.getLedgerOpening());
+            case PURCHASE -> u.getPurchases().get(Integer.parseInt(s.key()));
+            case GIFTS -> u.getGifts();
+            case ROULETTE -> u.getTodayRoulette();
+            case WEEK -> state.getWeekSummaries().get(s.key());
+            case CHECKPOINT -> state.getReplayCheckpoints().get(s.key());
+        };
+    }
+
+    private void apply(JournalEntry e) {
+        try {
+            for (var c : e.changes().entrySet()) applySection(StateSection.parse(c.getKey()), c.getValue());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot replay journal entry #" + e.seq(), ex);
+        }
+    }
+
+    private void applySection(StateSection s, JsonNode v) throws IOException {
+        var u = state.getAnna();
+        switch (s.kind()) {
+            case META -> {
+                var m = mapper.treeToValue(v, Meta.class);
+                state.setInstalledAt(m.installedAt());
+                state.setLastProcessedWeekStart(m.lastProcessedWeekStart());
+            }
+            case GOALS -> state.setGoals(readList(v, OneTimeGoal.class));
+            case SHOP -> state.setShop(readList(v, ShopItem.class));
+            case DAILY_TASKS -> state.setDailyTasks(readList(v, DailyTaskDef.class));
+            case PROFILE -> {
+                var p = mapper.treeToValue(v, Profile.class);
+                u.setUsername(p.username());
+                u.setAvatarUrl(p.avatarUrl());
+            }
+            case BALANCE -> u.setBalance(v.asInt());
+            case STREAKS -> u.setStreaks(mapper.convertValue(v, new TypeReference<HashMap<String, Integer>>() {}));
+            case DAY -> {
+                if (v.isNull()) u.getDaily().remove(s.key());
+                else u.getDaily().put(s.key(), mapper.treeToValue(v, DailyLog.class));
+            }
+            case EXTRAS -> {
+                if (v.isNull()) u.getHistoryExtras().remove(s.key());
+                else u.getHistoryExtras().put(s.key(), readList(v, HistoryDTO.Item.class));
+            }
+            case LEDGER -> {
+                if (v.isNull()) u.getLedger().remove(s.key());
+                else u.getLedger().put(s.key(), readList(v, HistoryDTO.Item.class));
+            }
+            case LEDGER_START -> {
+                var l = mapper.treeToValue(v, LedgerStart.class);
+                u.setLedgerSince(l.since());
+                u.setLedgerOpening(l.opening());
+            }
+            case PURCHASE -> {
+                int i = Integer.parseInt(s.key());
+                var p = mapper.treeToValue(v, Purchase.class);
+                if (i < u.getPurchases().size()) u.getPurchases().set(i, p);
+                else u.getPurchases().add(p);
+            }
+            case GIFTS -> u.setGifts(readList(v, Gift.class));
+            case ROULETTE -> u.setTodayRoulette(v.isNull() ? null : mapper.treeToValue(v, RouletteState.class));
+            case WEEK -> {
+                if (v.isNull()) state.getWeekSummaries().remove(s.key());
+                else state.getWeekSummaries().put(s.key(), mapper.treeToValue(v, WeekSummary.class));
+            }
+            case CHECKPOINT -> {
+                if (v.isNull()) state.getReplayCheckpoints().remove(s.key());
+                else state.getReplayCheckpoints().put(s.key(), v.asInt());
+            }
+        }
+        state.markDirty(s);
+    }
+
+    private <T> List<T> readList(JsonNode v, Class<T> type) throws IOException {
+        List<T> list = mapper.readerForListOf(type).readValue(v);
+        return new ArrayList<>(list);
+    }
+}
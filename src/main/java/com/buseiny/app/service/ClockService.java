@@ -0,0 +1,64 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.util.SimulatedClock;
+import org.springframework.stereotype.Service;
+
+import java.time.*;
+
+/**
+ * Current time in the app's zone, from the injected {@link Clock}. Today's date is cached until
+ * the next local midnight, so asking for it is a clock read and a comparison.
+ */
+@Service
+public class ClockService {
+
+    private record Today(LocalDate date, long from, long until) {}
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private volatile Today today;
+
+    public ClockService(Clock clock) {
+        this.clock = clock;
+        this.zone = clock.getZone();
+    }
+
+    public Clock clock() {
+        return clock;
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    public long millis() {
+        return clock.millis();
+    }
+
+    public LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    public LocalDate today() {
+        long now = clock.millis();
+        var t = today;
+        if (t == null || now < t.from() || now >= t.until()) {
+            var date = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+            t = new Today(date, date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+            today = t;
+        }
+        return t.date();
+    }
+
+    public boolean isSimulated() {
+        return clock instanceof SimulatedClock;
+    }
+
+    /** Moves simulated time forward; fails on the system clock. */
+    public LocalDateTime advance(Duration d) {
+        if (!(clock instanceof SimulatedClock sim)) throw new IllegalStateException("Clock is not simulated");
+        sim.advance(d);
+        return now();
+    }
+}
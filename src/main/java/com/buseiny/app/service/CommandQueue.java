@@ -0,0 +1,135 @@
+package com.buseiny.app.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread that applies every state mutation. Callers enqueue commands into a bounded
+ * buffer and wait on a future; the thread drains whatever is queued, applies the commands in
+ * order and journals their changes as one commit per drain. A full buffer blocks the caller.
+ */
+@Slf4j
+class CommandQueue implements AutoCloseable {
+
+    /** Journals everything changed by a drained batch; completes when it is durable. */
+    @FunctionalInterface
+    interface Committer {
+        CompletableFuture<Void> commit(String event) throws IOException;
+    }
+
+    private static final class Command<T> {
+        final String event;
+        final StateService.Mutation<T> action;
+        final CompletableFuture<T> done = new CompletableFuture<>();
+        T result;
+        Throwable error;
+
+        Command(String event, StateService.Mutation<T> action) {
+            this.event = event;
+            this.action = action;
+        }
+
+        void apply() {
+            try {
+                result = action.apply();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        void finish(CompletableFuture<Void> durable) {
+            if (error != null) {
+                done.completeExceptionally(error);
+                return;
+            }
+            durable.whenComplete((v, e) -> {
+                if (e != null) done.completeExceptionally(e);
+                else done.complete(result);
+            });
+        }
+    }
+
+    private final BlockingQueue<Command<?>> queue;
+    private final Committer committer;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long drains;
+    private long applied;
+
+    CommandQueue(int capacity, Committer committer) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.committer = committer;
+        this.thread = new Thread(this::run, "state-commands");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Queues {@code action}; the future completes with its result once its changes satisfy the durability setting. */
+    <T> CompletableFuture<T> submit(String event, StateService.Mutation<T> action) throws InterruptedException {
+        if (!running) throw new IllegalStateException("Command queue is closed");
+        var command = new Command<>(event, action);
+        queue.put(command);
+        return command.done;
+    }
+
+    /** True on the thread applying commands, which alone may touch the live state. */
+    boolean isWriterThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void run() {
+        List<Command<?>> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch);
+                apply(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<Command<?>> batch) {
+        Set<String> events = new LinkedHashSet<>();
+        for (var c : batch) {
+            c.apply();
+            events.add(c.event);
+        }
+        CompletableFuture<Void> durable;
+        try {
+            durable = committer.commit(String.join(",", events));
+        } catch (IOException | RuntimeException e) {
+            log.error("Commit of {} failed", events, e);
+            durable = CompletableFuture.failedFuture(e);
+        }
+        for (var c : batch) c.finish(durable);
+        drains++;
+        applied += batch.size();
+        log.debug("Applied {} commands {} ({} in {} drains)", batch.size(), events, applied, drains);
+    }
+
+    /** Applies what is still queued and stops the thread. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,11 +3,14 @@ package com.buseiny.app.service;
 import java.io.IOException;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
  * Periodic maintenance tasks like streak resets and roulette penalties.
+ * Day boundaries are processed here and at startup, or by the first mutation after a midnight.
  */
 @Component
 @Slf4j
@@ -17,11 +20,20 @@ public class DailyScheduler {
     public DailyScheduler(StateService state) {
         this.state = state;
     }
-    //Every hour
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            state.processDayBoundaries();
+        } catch (IOException e) {
+            log.error("Failed to process day boundaries at startup", e);
+        }
+    }
+
+    //Every hour, including right after midnight
     @Scheduled(cron = "0 0 * * * *", zone = "${app.timezone}")
     public void dailyMaintenance() {
         try {
-            state.resetStreaksIfMissedYesterday();
+            state.processDayBoundaries();
         } catch (IOException e) {
             log.error("Failed to run daily maintenance", e);
         }
@@ -1,11 +1,13 @@
 package com.buseiny.app.service;
 
 import com.buseiny.app.model.DailyLog;
+import com.buseiny.app.model.StateSection;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -16,13 +18,23 @@ public class DailyTaskService {
         this.state = state;
     }
 
-    public synchronized void checkGenericTask(String taskId) throws IOException {
-        checkGeneric(taskId, rewardFor(taskId), streakEnabled(taskId));
+    public CompletableFuture<Void> checkGenericTask(String taskId) {
+        return state.mutateAsync("taskChecked", () -> {
+            checkGeneric(taskId, rewardFor(taskId), streakEnabled(taskId));
+            return null;
+        });
     }
 
-    public synchronized void addMinutesByTaskId(String taskId, int minutes) throws IOException {
+    public CompletableFuture<Void> addMinutesByTaskId(String taskId, int minutes) {
+        return state.mutateAsync("minutesAdded", () -> {
+            addMinutes(taskId, minutes);
+            return null;
+        });
+    }
+
+    private void addMinutes(String taskId, int minutes) throws IOException {
         state.processDayBoundariesIfNeeded();
-        var defOpt = state.getState().getDailyTasks().stream().filter(d -> d.id().equals(taskId)).findFirst();
+        var defOpt = state.getState().taskIndex().find(taskId);
         if (defOpt.isEmpty()) return;
         var def = defOpt.get();
         if (def.kind() != com.buseiny.app.model.DailyTaskKind.MINUTES) return;
@@ -31,6 +43,7 @@ public class DailyTaskService {
         DailyLog logEntry = state.todayLog();
         var map = logEntry.getMinutes();
         map.put(taskId, map.getOrDefault(taskId, 0) + minutes);
+        state.todayLogChanged(logEntry);
         if (!logEntry.getMinutesAwarded().contains(taskId) && map.get(taskId) >= threshold) {
             state.addDailyWithRouletteBonus(taskId, baseReward);
             logEntry.getMinutesAwarded().add(taskId);
@@ -38,22 +51,18 @@ public class DailyTaskService {
                 var u = state.getState().getAnna();
                 int s = u.getStreaks().getOrDefault(taskId, 0) + 1;
                 u.getStreaks().put(taskId, s);
-                if (s % 7 == 0) state.addBalance(7);
+                u.markDirty(StateSection.STREAKS);
+                if (s % 7 == 0) state.addBalance("Streak: " + def.title() + " (7 days)", 7);
             }
         }
-        state.save();
     }
 
     private int rewardFor(String taskId){
-        return state.getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(taskId))
-                .findFirst().map(com.buseiny.app.model.DailyTaskDef::dailyReward).orElse(1);
+        return state.getState().taskIndex().find(taskId).map(com.buseiny.app.model.DailyTaskDef::dailyReward).orElse(1);
     }
 
     private boolean streakEnabled(String taskId){
-        return state.getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(taskId))
-                .findFirst().map(com.buseiny.app.model.DailyTaskDef::streakEnabled).orElse(false);
+        return state.getState().taskIndex().find(taskId).map(com.buseiny.app.model.DailyTaskDef::streakEnabled).orElse(false);
     }
 
     
@@ -62,14 +71,15 @@ public class DailyTaskService {
         state.processDayBoundariesIfNeeded();
         DailyLog logEntry = state.todayLog();
         if (logEntry.getChecks().contains(id)) return;
+        state.todayLogChanged(logEntry);
         state.addDailyWithRouletteBonus(id, baseReward);
         logEntry.getChecks().add(id);
         if (streak){
             var u = state.getState().getAnna();
             int s = u.getStreaks().getOrDefault(id, 0) + 1;
             u.getStreaks().put(id, s);
-            if (s % 7 == 0) state.addBalance(7);
+            u.markDirty(StateSection.STREAKS);
+            if (s % 7 == 0) state.addBalance("Streak: " + state.prettyDaily(id) + " (7 days)", 7);
         }
-        state.save();
     }
 }
@@ -0,0 +1,198 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.AppState;
+import com.buseiny.app.model.OneTimeGoal;
+import com.buseiny.app.model.StateSection;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Least recently used month and day histories of closed periods, each kept with the state version
+ * it was computed from. {@link #update} learns from every commit which months it changed: a month
+ * alone (its ledger or extras, a purchase or week result landing in it) or a month and all later
+ * ones (a day log before the ledger, whose streaks run on), and everything for new task
+ * definitions, redefined goals, install date or ledger start date. A goal completion changes the month
+ * it is dated in. An entry answers a read of another version only if no such change came between the two.
+ */
+class HistoryCache {
+
+    private record Entry(long version, Object value) {}
+
+    private final int capacity;
+    // "yyyy-MM" month or "yyyy-MM-dd" day -> history, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // month -> version of the last commit that changed it
+    private final Map<String, Long> changed = new HashMap<>();
+    // month -> version of the last commit that changed it and every later month; versions grow with the months
+    private final NavigableMap<String, Long> changedFrom = new TreeMap<>();
+    // newest version update() has seen; later ones may have changes it does not know of yet
+    private long seen;
+    private LocalDateTime installedAt;
+    private LocalDate ledgerSince;
+    private List<OneTimeGoal> goals;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    HistoryCache(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    synchronized HistoryDTO.MonthHistory month(LocalDate first, long version) {
+        var e = valid(first.toString().substring(0, 7), version);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (HistoryDTO.MonthHistory) e.value();
+    }
+
+    /** A day from its own entry or its month's. */
+    synchronized HistoryDTO.DayHistory day(LocalDate date, long version) {
+        var e = valid(date.toString(), version);
+        if (e != null) {
+            hits++;
+            return (HistoryDTO.DayHistory) e.value();
+        }
+        e = valid(date.toString().substring(0, 7), version);
+        if (e != null) {
+            hits++;
+            return ((HistoryDTO.MonthHistory) e.value()).days().get(date.getDayOfMonth() - 1);
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void putMonth(LocalDate first, long version, HistoryDTO.MonthHistory month) {
+        put(first.toString().substring(0, 7), new Entry(version, month));
+    }
+
+    synchronized void putDay(LocalDate date, long version, HistoryDTO.DayHistory day) {
+        put(date.toString(), new Entry(version, day));
+    }
+
+    /** Records the months a commit changed and drops their entries; runs on the committing thread. */
+    synchronized void update(AppState view, Set<StateSection> sections) {
+        long version = view.getJournalSeq();
+        seen = Math.max(seen, version);
+        var u = view.getAnna();
+        // history depends on when the ledger starts, not on its opening balance
+        boolean moved = installedAt != null && !installedAt.equals(view.getInstalledAt())
+                || ledgerSince != null && !ledgerSince.equals(u.getLedgerSince());
+        installedAt = view.getInstalledAt();
+        ledgerSince = u.getLedgerSince();
+        var previousGoals = goals;
+        goals = List.copyOf(view.getGoals());
+        if (sections == null || moved) {
+            changedFrom(version, "");
+            return;
+        }
+        var since = ledgerSince.toString();
+        for (var s : sections) {
+            switch (s.kind()) {
+                case DAILY_TASKS -> changedFrom(version, "");
+                case GOALS -> goalsChanged(version, previousGoals, since);
+                case LEDGER -> changed(version, s.key());
+                case DAY -> {
+                    if (s.key().compareTo(since) < 0) changedFrom(version, month(s.key()));
+                }
+                case EXTRAS -> {
+                    if (s.key().compareTo(since) < 0) changed(version, s.key());
+                }
+                case WEEK -> {
+                    var monday = LocalDate.parse(s.key()).plusWeeks(1).toString();
+                    if (monday.compareTo(since) < 0) changed(version, monday);
+                }
+                case PURCHASE -> {
+                    int i = Integer.parseInt(s.key());
+                    var p = i < u.getPurchases().size() ? u.getPurchases().get(i) : null;
+                    if (p == null || p.purchasedAt() == null) changedFrom(version, "");
+                    else if (p.purchasedAt().toLocalDate().toString().compareTo(since) < 0) changed(version, p.purchasedAt().toLocalDate().toString());
+                }
+                default -> {}
+            }
+        }
+    }
+
+    synchronized HistoryDTO.CacheStats stats() {
+        return new HistoryDTO.CacheStats(entries.size(), capacity, hits, misses, evictions, invalidations);
+    }
+
+    // entry of key if it holds what the state of version holds
+    private Entry valid(String key, long version) {
+        var e = entries.get(key);
+        if (e == null || version > seen) return null;
+        String month = month(key);
+        long stamp = changed.getOrDefault(month, 0L);
+        var from = changedFrom.floorEntry(month);
+        if (from != null) stamp = Math.max(stamp, from.getValue());
+        return stamp <= Math.min(version, e.version()) ? e : null;
+    }
+
+    private void put(String key, Entry e) {
+        var old = entries.get(key);
+        if (old != null && old.version() > e.version()) return;
+        entries.put(key, e);
+        if (entries.size() > capacity) {
+            var it = entries.keySet().iterator();
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // completions count on their date, which history reads from the ledger from ledgerSince on;
+    // any other change to the goals may move rewards anywhere
+    private void goalsChanged(long version, List<OneTimeGoal> previous, String since) {
+        if (previous == null || previous.size() != goals.size()) {
+            changedFrom(version, "");
+            return;
+        }
+        List<String> completed = new ArrayList<>();
+        for (int i = 0; i < goals.size(); i++) {
+            var was = previous.get(i);
+            var now = goals.get(i);
+            if (was.equals(now)) continue;
+            if (was.isCompleted() || !now.isCompleted() || !was.equals(new OneTimeGoal(now.id(), now.title(), now.reward()))) {
+                changedFrom(version, "");
+                return;
+            }
+            completed.add(now.completedAt().toLocalDate().toString());
+        }
+        for (var date : completed) {
+            if (date.compareTo(since) < 0) changed(version, date);
+        }
+    }
+
+    private void changed(long version, String date) {
+        String month = month(date);
+        changed.put(month, version);
+        invalidate(k -> month(k).equals(month));
+    }
+
+    private void changedFrom(long version, String month) {
+        changedFrom.tailMap(month, true).clear();
+        changedFrom.put(month, version);
+        changed.keySet().removeIf(m -> m.compareTo(month) >= 0);
+        invalidate(k -> month(k).compareTo(month) >= 0);
+    }
+
+    private void invalidate(Predicate<String> keys) {
+        for (var it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (keys.test(it.next())) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    private static String month(String key) {
+        return key.length() < 7 ? key : key.substring(0, 7);
+    }
+}
@@ -2,177 +2,366 @@ package com.buseiny.app.service;
 
 import com.buseiny.app.dto.HistoryDTO;
 import com.buseiny.app.model.DailyLog;
+import com.buseiny.app.model.MonthSegmentedMap;
+import com.buseiny.app.model.StateSection;
+import com.buseiny.app.model.StreakCheckpoints;
+import com.buseiny.app.model.UserState;
+import com.buseiny.app.model.WeekSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import com.buseiny.app.util.TimeUtil;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 @Slf4j
 public class HistoryService {
     private final StateService state;
+    private final ClockService clock;
+    // one day per line, see writeRange()
+    private final ObjectWriter lineWriter;
+    @Value("${app.historyCacheSize:64}")
+    private int cacheSize;
+    @Value("${app.history.parallelMonths:6}")
+    private int parallelMonths;
+    private HistoryCache cache;
     private static final DateTimeFormatter D = DateTimeFormatter.ISO_LOCAL_DATE;
 
-    public HistoryService(StateService state) {
+    public HistoryService(StateService state, ClockService clock, ObjectMapper mapper) {
         this.state = state;
+        this.clock = clock;
+        this.lineWriter = mapper.writerFor(HistoryDTO.DayHistory.class)
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
-    private Map<String, List<HistoryDTO.Item>> buildStreakBonusesFixed() {
-        Map<String, List<HistoryDTO.Item>> map = new HashMap<>();
-        var daily = state.getState().getAnna().getDaily();
-
-        List<LocalDate> dates = daily.keySet().stream()
-                .map(LocalDate::parse)
-                .sorted()
-                .toList();
+    @PostConstruct
+    void startCache() {
+        cache = new HistoryCache(cacheSize);
+        state.onPublish(cache::update);
+        cache.update(state.getState(), Set.of());
+    }
 
-        int streak = 0;
-        for (LocalDate d : dates) {
-            var log = daily.get(d.toString());
-            boolean done = false; // unified: streak-specific labels moved below
-            if (done) {
-                streak++;
-                // unified: label handled generically below
-            } else streak = 0;
-        }
+    // days before today and months that ended before it are cached, see HistoryCache
+    public HistoryDTO.DayHistory computeDayHistory(String dateStr) throws IOException {
+        LocalDate date = LocalDate.parse(dateStr);
+        return state.read(() -> {
+            long version = state.getState().getJournalSeq();
+            boolean closed = date.isBefore(clock.today());
+            var day = closed ? cache.day(date, version) : null;
+            if (day == null) {
+                day = days(date, date).get(0);
+                if (closed) cache.putDay(date, version, day);
+            }
+            return day;
+        });
+    }
 
-        streak = 0;
-        for (LocalDate d : dates) {
-            var log = daily.get(d.toString());
-            boolean done = false;
-            if (done) {
-                streak++;
-                // unified
-            } else streak = 0;
-        }
+    public HistoryDTO.MonthHistory computeMonthHistory(int year, int month) throws IOException {
+        LocalDate first = LocalDate.of(year, month, 1);
+        LocalDate last = first.plusMonths(1).minusDays(1);
+        return state.read(() -> {
+            long version = state.getState().getJournalSeq();
+            boolean closed = last.isBefore(clock.today());
+            var history = closed ? cache.month(first, version) : null;
+            if (history == null) {
+                history = new HistoryDTO.MonthHistory(year, month, Collections.unmodifiableList(days(first, last)));
+                if (closed) cache.putMonth(first, version, history);
+            }
+            return history;
+        });
+    }
 
-        streak = 0;
-        for (LocalDate d : dates) {
-            var log = daily.get(d.toString());
-            boolean done = false;
-            if (done) {
-                streak++;
-                // unified
-            } else streak = 0;
-        }
-        return map;
+    public HistoryDTO.CacheStats cacheStats() {
+        return cache.stats();
     }
 
-    private Map<String, List<HistoryDTO.Item>> buildGenericDailyItemsAndBonuses() {
-        Map<String, List<HistoryDTO.Item>> map = new HashMap<>();
-
-        List<LocalDate> dates = state.getState().getAnna().getDaily().keySet().stream().map(LocalDate::parse).sorted().toList();
-
-        for (var def : state.getState().getDailyTasks()) {
-            int streak = 0;
-            for (LocalDate d : dates) {
-                var log = state.getState().getAnna().getDaily().get(d.toString());
-                boolean done = false;
-                if (log != null) {
-                    if (def.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES) {
-                        Integer m = log.getMinutes().get(def.id());
-                        done = m != null && def.minutesPerDay() != null && m >= def.minutesPerDay();
-                    } else {
-                        done = log.getChecks().contains(def.id());
-                    }
+    /**
+     * Writes the history of {@code from}..{@code to} to {@code out} as NDJSON, one day per line,
+     * flushing after every month. Each month is read from the state published when it is worked
+     * out, so no view is held across the range and only the months in progress are in memory.
+     * Ranges of {@code app.history.parallelMonths} months or more are worked out on the common
+     * fork-join pool, as many months at a time as it has threads, and written in date order.
+     */
+    public void writeRange(LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        List<LocalDate> starts = new ArrayList<>();
+        for (var start = from; !start.isAfter(to); start = start.withDayOfMonth(1).plusMonths(1)) starts.add(start);
+        int window = starts.size() >= parallelMonths ? ForkJoinPool.getCommonPoolParallelism() : 1;
+        log.debug("History {}..{}: {} months, {} at a time", from, to, starts.size(), window);
+        try (var gen = lineWriter.createGenerator(out)) {
+            gen.setRootValueSeparator(null); // lines end with their own newline
+            if (window > 1) warmStreaks(from, to);
+            Deque<CompletableFuture<List<HistoryDTO.DayHistory>>> pending = new ArrayDeque<>();
+            for (var start : starts) {
+                var monthEnd = start.withDayOfMonth(start.lengthOfMonth());
+                var end = monthEnd.isBefore(to) ? monthEnd : to;
+                if (window == 1) {
+                    writeLines(gen, monthDays(start, end));
+                    continue;
                 }
-                if (done) {
-                    map.computeIfAbsent(d.toString(), k->new ArrayList<>()).add(new HistoryDTO.Item("Daily: " + def.title(), def.dailyReward()));
-                    if (def.streakEnabled()) {
-                        streak++;
-                        if (streak % 7 == 0) {
-                            map.computeIfAbsent(d.toString(), k->new ArrayList<>())
-                                    .add(new HistoryDTO.Item("Streak: " + def.title() + " (7 days)", 7));
-                        }
+                pending.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return monthDays(start, end);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                } else if (def.streakEnabled()) {
-                    streak = 0;
-                }
+                }, ForkJoinPool.commonPool()));
+                if (pending.size() >= window) writeLines(gen, join(pending.removeFirst()));
             }
+            while (!pending.isEmpty()) writeLines(gen, join(pending.removeFirst()));
         }
-        return map;
     }
 
-    public synchronized HistoryDTO.DayHistory computeDayHistory(String dateStr) throws IOException {
-        state.processDayBoundariesIfNeeded();
+    // days first..end of one month; a whole closed month comes from the cache if there, but a range does not fill it
+    private List<HistoryDTO.DayHistory> monthDays(LocalDate first, LocalDate end) throws IOException {
+        return state.read(() -> {
+            boolean whole = first.getDayOfMonth() == 1 && end.getDayOfMonth() == end.lengthOfMonth();
+            var cached = whole && end.isBefore(clock.today()) ? cache.month(first, state.getState().getJournalSeq()) : null;
+            return cached != null ? cached.days() : days(first, end);
+        });
+    }
+
+    // streak counters up to the last month before the ledger, worked out in one walk instead of once per month
+    private void warmStreaks(LocalDate from, LocalDate to) throws IOException {
+        state.read(() -> {
+            var s = state.getState();
+            var since = s.getAnna().getLedgerSince();
+            if (from.isBefore(since)) s.streakCheckpoints().at(MonthSegmentedMap.monthOf((to.isBefore(since) ? to : since).format(D)));
+            return null;
+        });
+    }
 
-        LocalDate date = LocalDate.parse(dateStr);
-        var u = state.getState().getAnna();
-        var daily = u.getDaily().get(dateStr);
+    private void writeLines(JsonGenerator gen, List<HistoryDTO.DayHistory> days) throws IOException {
+        for (var day : days) {
+            lineWriter.writeValue(gen, day);
+            gen.writeRaw('\n');
+        }
+        gen.flush();
+    }
+
+    private static <T> T join(CompletableFuture<T> f) throws IOException {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * History of the days {@code from}..{@code to} in one walk. Days from the ledger start on are
+     * read from the ledger; earlier days are derived from the logs, with streak counters taken from
+     * the checkpoint of {@code from}'s month and brought up to {@code from} with that month's logs.
+     */
+    private List<HistoryDTO.DayHistory> days(LocalDate from, LocalDate to) {
+        var s = state.getState();
+        var u = s.getAnna();
+        var since = u.getLedgerSince();
+        int[] streak = null;
+        if (from.isBefore(since)) {
+            var counters = s.streakCheckpoints().at(MonthSegmentedMap.monthOf(from.format(D)));
+            u.getDaily().forEach(from.withDayOfMonth(1), from.minusDays(1), (d, log) -> StreakCheckpoints.advance(s.getDailyTasks(), counters, log));
+            streak = counters;
+        }
 
+        List<HistoryDTO.DayHistory> out = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            String dateStr = date.format(D);
+            List<HistoryDTO.Item> items = date.isBefore(since)
+                    ? derivedItems(date, streak)
+                    : u.getLedger().getOrDefault(date, List.of());
+            int total = items.stream().mapToInt(HistoryDTO.Item::points).sum();
+            out.add(new HistoryDTO.DayHistory(dateStr, total, items));
+        }
+        return out;
+    }
+
+    // history of a day before the ledger, rebuilt from the logs; advances streak past the day
+    private List<HistoryDTO.Item> derivedItems(LocalDate date, int[] streak) {
+        var s = state.getState();
+        var u = s.getAnna();
+        var defs = s.getDailyTasks();
+        var daily = u.getDaily().get(date);
         List<HistoryDTO.Item> items = new ArrayList<>();
 
         if (daily != null) {
-            for (var def : state.getState().getDailyTasks()){
-                if (def.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES){
-                    Integer m = daily.getMinutes().get(def.id());
-                    if (m != null && def.minutesPerDay() != null && m >= def.minutesPerDay()){
-                        items.add(new HistoryDTO.Item("Daily: " + def.title(), def.dailyReward()));
-                    }
-                } else {
-                    if (daily.getChecks().contains(def.id())){
-                        items.add(new HistoryDTO.Item("Daily: " + def.title(), def.dailyReward()));
+            for (var def : defs) {
+                if (def.doneIn(daily)) items.add(new HistoryDTO.Item("Daily: " + def.title(), def.dailyReward()));
+            }
+            // the daily rewards once more, with streak bonuses every 7th day in a row
+            for (int i = 0; i < defs.size(); i++) {
+                var def = defs.get(i);
+                if (def.doneIn(daily)) {
+                    items.add(new HistoryDTO.Item("Daily: " + def.title(), def.dailyReward()));
+                    if (def.streakEnabled() && ++streak[i] % 7 == 0) {
+                        items.add(new HistoryDTO.Item("Streak: " + def.title() + " (7 days)", 7));
                     }
+                } else if (def.streakEnabled()) {
+                    streak[i] = 0;
                 }
             }
         }
 
-        var fixedBonuses = buildStreakBonusesFixed().getOrDefault(dateStr, List.of());
-        items.addAll(fixedBonuses);
-
-        var genericMap = buildGenericDailyItemsAndBonuses();
-        items.addAll(genericMap.getOrDefault(dateStr, List.of()));
-
-        for (var g : state.getState().getGoals()) {
-            if (g.completedAt() != null && g.completedAt().toLocalDate().equals(date)) {
-                items.add(new HistoryDTO.Item("Achievement: " + g.title(), g.reward()));
-            }
+        for (var g : s.goalsCompletedOn(date)) {
+            items.add(new HistoryDTO.Item("Achievement: " + g.title(), g.reward()));
         }
 
         if (date.getDayOfWeek() == DayOfWeek.MONDAY) {
             LocalDate prevWeekStart = date.minusWeeks(1);
             if (!prevWeekStart.isBefore(state.firstFullWeekStart())) {
                 // For weekly minutes goal (first minutes-type task with weekly goal)
-                var minutesTaskOpt = state.getState().getDailyTasks().stream()
-                        .filter(t -> t.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0)
-                        .findFirst();
-                if (minutesTaskOpt.isPresent()){
-                    var t = minutesTaskOpt.get();
-                    int minutes = state.sumWeeklyGoalMinutesForWeek(prevWeekStart);
-                    if (minutes >= t.weeklyMinutesGoal()) items.add(new HistoryDTO.Item("Недельный бонус", 14));
-                    else items.add(new HistoryDTO.Item("Недельный штраф", -20));
+                var result = closedWeek(prevWeekStart).minutesResult();
+                if (result != null){
+                    if (result > 0) items.add(new HistoryDTO.Item("Недельный бонус", result));
+                    else items.add(new HistoryDTO.Item("Недельный штраф", result));
                 }
             }
         }
 
-        for (var p : u.getPurchases()) {
-            if (p.purchasedAt() != null && p.purchasedAt().toLocalDate().equals(date)) {
-                items.add(new HistoryDTO.Item("Покупка: " + p.titleSnapshot(), -p.costSnapshot()));
-            }
+        for (var p : u.purchasesOn(date)) {
+            items.add(new HistoryDTO.Item("Покупка: " + p.titleSnapshot(), -p.costSnapshot()));
         }
 
-        items.addAll(u.getHistoryExtras().getOrDefault(dateStr, List.of()));
+        items.addAll(u.getHistoryExtras().getOrDefault(date, List.of()));
+        return items;
+    }
+
+    /**
+     * Balance, streaks and week progress at the end of {@code date}. Each starts from what is kept
+     * at a week start and goes forward at most a week: the balance from its checkpoint for the
+     * date's Monday, the week from its totals, streaks back through whole weeks done.
+     */
+    public HistoryDTO.AsOf computeAsOf(String dateStr) throws IOException {
+        LocalDate date = LocalDate.parse(dateStr);
+        return state.read(() -> {
+            var s = state.getState();
+            var weekStart = TimeUtil.weekStartMonday(date);
+            var week = s.weeks().week(weekStart).through(date);
+            List<HistoryDTO.TaskAsOf> tasks = new ArrayList<>();
+            for (var def : s.getDailyTasks()) {
+                tasks.add(new HistoryDTO.TaskAsOf(def.id(), def.title(),
+                        def.streakEnabled() ? streakAt(def.id(), date) : 0,
+                        week.minutes(def.id()), week.daysDone(def.id()), StateService.weeklyRequirement(s, def.id())));
+            }
+            var goalTask = s.weeklyGoalTask();
+            return new HistoryDTO.AsOf(dateStr, balanceAt(date), weekStart.toString(),
+                    goalTask.map(t -> week.minutes(t.id())).orElse(0),
+                    goalTask.map(t -> t.weeklyMinutesGoal()).orElse(0),
+                    tasks);
+        });
+    }
 
-        int total = items.stream().mapToInt(HistoryDTO.Item::points).sum();
-        return new HistoryDTO.DayHistory(dateStr, total, items);
+    /**
+     * Balance at the end of {@code date}: the ledger opening plus its entries up to the date once
+     * the ledger had started, before that the balance a recalculation replay reaches.
+     */
+    private int balanceAt(LocalDate date) {
+        var u = state.getState().getAnna();
+        var since = u.getLedgerSince();
+        if (date.isBefore(since.minusDays(1))) return replayedBalanceAt(date);
+        var from = TimeUtil.weekStartMonday(date);
+        int balance;
+        if (from.isAfter(since)) {
+            balance = ledgerBalanceAt(from);
+        } else {
+            from = since;
+            balance = u.getLedgerOpening();
+        }
+        for (var d = from; !d.isAfter(date); d = d.plusDays(1)) balance += sum(u.getLedger().getOrDefault(d, List.of()));
+        return balance;
     }
 
-    public synchronized HistoryDTO.MonthHistory computeMonthHistory(int year, int month) throws IOException {
-        state.processDayBoundariesIfNeeded();
+    // ledger balance at the start of monday, a Monday after the ledger start
+    private int ledgerBalanceAt(LocalDate monday) {
+        var s = state.getState();
+        var u = s.getAnna();
+        var since = u.getLedgerSince();
+        var floor = s.balanceCheckpoints().floor(monday);
+        LocalDate from = since;
+        int balance = u.getLedgerOpening();
+        if (floor != null && !floor.getKey().isBefore(since)) {
+            from = floor.getKey();
+            balance = floor.getValue();
+        }
+        for (var d = from; d.isBefore(monday); d = d.plusDays(1)) {
+            balance += sum(u.getLedger().getOrDefault(d, List.of()));
+            if (d.getDayOfWeek() == DayOfWeek.SUNDAY) s.balanceCheckpoints().put(d.plusDays(1), balance);
+        }
+        return balance;
+    }
 
-        LocalDate first = LocalDate.of(year, month, 1);
-        LocalDate last = first.plusMonths(1).minusDays(1);
+    // balance a recalculation reaches at the end of date, from the latest week start known before it
+    private int replayedBalanceAt(LocalDate date) {
+        var s = state.getState();
+        var replay = new Replay();
+        var known = s.balanceCheckpoints().floor(date);
+        var stored = s.replayCheckpoint(date);
+        if (known == null || stored != null && stored.getKey().isAfter(known.getKey())) known = stored;
+        LocalDate from;
+        if (known != null) {
+            from = known.getKey();
+            replay.balance = known.getValue();
+            replay.closeWeek(from.minusWeeks(1));
+        } else {
+            from = firstRecordedDate(s);
+            if (from == null || date.isBefore(from)) return 0;
+        }
+        for (var d = from; ; d = d.plusDays(1)) {
+            replay.day(d);
+            if (d.equals(date)) return replay.balance;
+            if (d.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                s.balanceCheckpoints().put(d.plusDays(1), replay.balance);
+                replay.closeWeek(TimeUtil.weekStartMonday(d));
+            }
+        }
+    }
 
-        List<HistoryDTO.DayHistory> list = new ArrayList<>();
-        for (LocalDate d = first; !d.isAfter(last); d = d.plusDays(1)) {
-            list.add(computeDayHistory(d.format(D)));
+    /**
+     * Days in a row {@code taskId} was done up to {@code date}, or up to the day before if it was
+     * not done that day (its streak is reset only the next morning). Weeks done on every day are
+     * skipped whole.
+     */
+    private int streakAt(String taskId, LocalDate date) {
+        var weeks = state.getState().weeks();
+        var day = date;
+        if (!weeks.week(TimeUtil.weekStartMonday(day)).done(taskId, day)) day = day.minusDays(1);
+        int streak = 0;
+        while (true) {
+            var week = weeks.week(TimeUtil.weekStartMonday(day));
+            if (day.getDayOfWeek() == DayOfWeek.SUNDAY && week.daysDone(taskId) == 7) {
+                streak += 7;
+                day = day.minusWeeks(1);
+            } else if (week.done(taskId, day)) {
+                streak++;
+                day = day.minusDays(1);
+            } else {
+                return streak;
+            }
         }
+    }
 
-        return new HistoryDTO.MonthHistory(year, month, list);
+    /** Reconciles the ledger with the balance; reads every stored month. */
+    public HistoryDTO.LedgerCheck checkLedger() throws IOException {
+        return state.read(() -> {
+            var u = state.getState().getAnna();
+            int sum = u.getLedgerOpening();
+            for (var items : u.getLedger().values()) sum += sum(items);
+            return new HistoryDTO.LedgerCheck(u.getBalance(), sum);
+        });
     }
 
     public static class UpsertResult {
@@ -180,10 +369,53 @@ public class HistoryService {
         public int newBalance;
     }
 
-    public synchronized UpsertResult adminUpsertDayAndRecalcNew(com.buseiny.app.dto.AdminDayUpsertNewRequest req) throws IOException {
+    public UpsertResult adminUpsertDayAndRecalcNew(com.buseiny.app.dto.AdminDayUpsertNewRequest req) throws IOException {
         if (req.date() == null || req.date().isBlank()) throw new IllegalArgumentException("date required");
+        state.mutate("adminDayUpsert", () -> {
+            upsertDay(req);
+            recalcFrom(TimeUtil.weekStartMonday(LocalDate.parse(req.date())));
+            return null;
+        });
+
+        UpsertResult out = new UpsertResult();
+        out.day = computeDayHistory(req.date());
+        out.newBalance = state.getState().getAnna().getBalance();
+        return out;
+    }
+
+    public static class BulkUpsertResult {
+        public List<HistoryDTO.DayHistory> days;
+        public int newBalance;
+    }
+
+    /** Upserts several days and recalculates once, from the earliest of them. */
+    public BulkUpsertResult adminUpsertDaysAndRecalc(List<com.buseiny.app.dto.AdminDayUpsertNewRequest> reqs) throws IOException {
+        if (reqs == null || reqs.isEmpty()) throw new IllegalArgumentException("days required");
+        List<LocalDate> dates = new ArrayList<>();
+        for (var req : reqs) {
+            if (req.date() == null || req.date().isBlank()) throw new IllegalArgumentException("date required");
+            dates.add(LocalDate.parse(req.date()));
+        }
+        LocalDate first = Collections.min(dates);
+        state.mutate("adminDaysUpsert", () -> {
+            for (var req : reqs) upsertDay(req);
+            recalcFrom(TimeUtil.weekStartMonday(first));
+            return null;
+        });
+
+        return state.read(() -> {
+            BulkUpsertResult out = new BulkUpsertResult();
+            out.days = new ArrayList<>();
+            for (var req : reqs) out.days.add(days(LocalDate.parse(req.date()), LocalDate.parse(req.date())).get(0));
+            out.newBalance = state.getState().getAnna().getBalance();
+            return out;
+        });
+    }
+
+    private void upsertDay(com.buseiny.app.dto.AdminDayUpsertNewRequest req) {
         var u = state.getState().getAnna();
         var log = u.getDaily().computeIfAbsent(req.date(), k -> new DailyLog());
+        u.markDirty(StateSection.day(req.date()));
         log.getMinutes().clear();
         log.getChecks().clear();
         log.getMinutesAwarded().clear();
@@ -195,95 +427,185 @@ public class HistoryService {
         if (req.checks() != null) {
             log.getChecks().addAll(req.checks());
         }
-        state.save();
-        recalcEverythingFromScratch();
-
-        UpsertResult out = new UpsertResult();
-        out.day = computeDayHistory(req.date());
-        out.newBalance = state.getState().getAnna().getBalance();
-        return out;
     }
 
-    private void recalcEverythingFromScratch() throws IOException {
-        var u = state.getState().getAnna();
-        u.setBalance(0);
-        u.getStreaks().clear();
+    // stored outcome of a closed week; weeks closed before summaries were kept are worked out again
+    private WeekSummary closedWeek(LocalDate weekStart) {
+        var summary = state.getState().weekSummary(weekStart);
+        return summary != null ? summary : state.weekOutcome(weekStart);
+    }
 
-        java.util.TreeSet<LocalDate> dates = new java.util.TreeSet<>();
-        for (var k : u.getDaily().keySet()) dates.add(LocalDate.parse(k));
-        // unified daily map already covers dates
-        for (var g : state.getState().getGoals()) {
-            if (g.completedAt() != null) dates.add(g.completedAt().toLocalDate());
+    /**
+     * One run of the balance replay: the balance reached so far and the ledger entries of the day
+     * being replayed. Weeks before {@code changedWeek} take their minutes result from their stored
+     * summary; summaries from {@code changedWeek} on, and missing ones, are written anew. A
+     * read-only run has no {@code changedWeek}, uses every stored summary and writes nothing.
+     */
+    private final class Replay {
+        final UserState u;
+        final LocalDate changedWeek; // null for a read-only run
+        final LocalDate today;
+        final LocalDate firstFullWeekStart;
+        final LocalDate currentWeekStart;
+        final Set<String> staleLedger;
+        int balance;
+        Integer opening;
+        List<HistoryDTO.Item> day = new ArrayList<>();
+
+        Replay() {
+            this.u = state.getState().getAnna();
+            this.changedWeek = null;
+            this.today = clock.today();
+            this.firstFullWeekStart = state.firstFullWeekStart();
+            this.currentWeekStart = TimeUtil.weekStartMonday(today);
+            this.staleLedger = Set.of();
         }
-        for (var p : u.getPurchases()) {
-            if (p.purchasedAt() != null) dates.add(p.purchasedAt().toLocalDate());
+
+        Replay(LocalDate changedWeek, LocalDate start) {
+            this.u = state.getState().getAnna();
+            this.changedWeek = changedWeek;
+            this.today = clock.today();
+            this.firstFullWeekStart = state.firstFullWeekStart();
+            this.currentWeekStart = TimeUtil.weekStartMonday(today);
+            // ledger days the replay rewrites or, if it does not reach them, drops
+            this.staleLedger = new HashSet<>();
+            for (var key : u.getLedger().keySet()) {
+                if (start == null || key.compareTo(start.toString()) >= 0) staleLedger.add(key);
+            }
+            // days of the ledger before the replayed ones stay, and so does its opening
+            if (start != null && u.getLedgerSince().isBefore(start)) opening = u.getLedgerOpening();
         }
-        for (var k : u.getHistoryExtras().keySet()) dates.add(LocalDate.parse(k));
-        if (dates.isEmpty()) { state.save(); return; }
 
-        LocalDate firstFullWeekStart = state.firstFullWeekStart();
-        LocalDate minDate = dates.first();
-        LocalDate maxDate = LocalDate.now(state.zone());
+        void add(String label, int delta) {
+            int next = Math.max(0, balance + delta); // balance never drops below 0
+            day.add(new HistoryDTO.Item(label, next - balance));
+            balance = next;
+        }
 
-        LocalDate d = minDate;
-        Map<String,Integer> genericStreaks = new HashMap<>();
+        void replayDay(LocalDate d) {
+            day(d);
+            var nextDay = d.plusDays(1);
+            if (nextDay.getDayOfWeek() == DayOfWeek.MONDAY) {
+                if (d.isBefore(today)) state.getState().putReplayCheckpoint(nextDay, balance);
+                closeWeek(TimeUtil.weekStartMonday(d));
+            }
+        }
 
-        while (!d.isAfter(maxDate)) {
-            String key = d.toString();
-            var log = u.getDaily().get(key);
+        // the changes of one day, without the results of a week it closes
+        void day(LocalDate d) {
+            var s = state.getState();
+            var log = u.getDaily().get(d);
+            if (opening == null && !d.isBefore(u.getLedgerSince())) opening = balance - sum(day);
 
             if (log != null) {
-                for (var def : state.getState().getDailyTasks()){
-                    if (def.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES){
-                        Integer m = log.getMinutes().get(def.id());
-                        if (m != null && def.minutesPerDay() != null && m >= def.minutesPerDay()) state.addBalance(def.dailyReward());
-                    } else {
-                        if (log.getChecks().contains(def.id())) state.addBalance(def.dailyReward());
-                    }
+                for (var def : s.getDailyTasks()){
+                    if (def.doneIn(log)) add("Daily: " + def.title(), def.dailyReward());
                 }
             }
-
-            // per-task streaks advanced generically below
-
-            // Unified tasks streaks handled below
-
-            for (var g : state.getState().getGoals()) {
-                if (g.completedAt() != null && g.completedAt().toLocalDate().equals(d)) {
-                    state.addBalance(g.reward());
-                }
+            for (var g : s.goalsCompletedOn(d)) {
+                add("Achievement: " + g.title(), g.reward());
             }
-
-            for (var p : u.getPurchases()) {
-                if (p.purchasedAt() != null && p.purchasedAt().toLocalDate().equals(d)) {
-                    u.setBalance(Math.max(0, u.getBalance() - p.costSnapshot()));
-                }
+            for (var p : u.purchasesOn(d)) {
+                add("Покупка: " + p.titleSnapshot(), -p.costSnapshot());
+            }
+            for (var extra : u.getHistoryExtras().getOrDefault(d, Collections.emptyList())) {
+                add(extra.label(), extra.points());
             }
+            flush(d);
+        }
 
-            for (var extra : u.getHistoryExtras().getOrDefault(key, Collections.emptyList())) {
-                state.addBalance(extra.points());
+        // applies the results of a week; they go to the ledger of the Monday after it
+        void closeWeek(LocalDate weekStart) {
+            if (weekStart.isBefore(firstFullWeekStart)) return;
+            var s = state.getState();
+            var nextDay = weekStart.plusWeeks(1);
+            var summary = s.weekSummary(weekStart);
+            boolean keep = summary != null && (changedWeek == null || weekStart.isBefore(changedWeek));
+            var outcome = keep ? summary : state.weekOutcome(weekStart);
+            var result = outcome.minutesResult();
+            if (result != null) add(result > 0 ? "Недельный бонус" : "Недельный штраф", result);
+            if (changedWeek != null && !keep && !nextDay.isAfter(currentWeekStart)) {
+                s.putWeekSummary(outcome.withBalance(balance));
             }
+        }
 
-            var nextDay = d.plusDays(1);
-            if (nextDay.getDayOfWeek() == DayOfWeek.MONDAY) {
-                LocalDate weekStart = TimeUtil.weekStartMonday(d);
-                if (!weekStart.isBefore(firstFullWeekStart)) {
-                    var minutesTaskOpt = state.getState().getDailyTasks().stream()
-                            .filter(t -> t.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0)
-                            .findFirst();
-                    if (minutesTaskOpt.isPresent()){
-                        var t = minutesTaskOpt.get();
-                        int minutes = state.sumWeeklyGoalMinutesForWeek(weekStart);
-                        if (minutes >= t.weeklyMinutesGoal()) state.addBalance(14);
-                        else state.addBalance(-20);
-                    }
-                }
+        void flush(LocalDate d) {
+            if (changedWeek != null && !d.isBefore(u.getLedgerSince())) {
+                putLedger(u, d, day);
+                staleLedger.remove(d.toString());
             }
+            day = new ArrayList<>();
+        }
 
-            d = d.plusDays(1);
+        void finish() {
+            // a result applied after the last replayed day belongs to the day after it
+            if (!day.isEmpty()) {
+                var next = today.plusDays(1);
+                if (opening == null && !next.isBefore(u.getLedgerSince())) opening = balance - sum(day);
+                flush(next);
+            }
+            staleLedger.forEach(u.getLedger()::remove);
+            int open = opening != null ? opening : balance;
+            if (open != u.getLedgerOpening()) u.setLedgerOpening(open);
+            u.setBalance(balance);
         }
+    }
 
+    /**
+     * Replays the balance from the logs, starting at the latest replay checkpoint at or before
+     * {@code changedWeek}, or at the first recorded day without one. Checkpoints are taken at every
+     * week start passed. The ledger is rewritten with the replayed changes from the start on, and
+     * opens with the replayed balance at its start if the replay covers it.
+     */
+    private void recalcFrom(LocalDate changedWeek) throws IOException {
+        var s = state.getState();
+        var u = s.getAnna();
+        u.getStreaks().clear();
+        u.markDirty(StateSection.STREAKS);
+
+        var checkpoint = s.replayCheckpoint(changedWeek);
+        if (checkpoint == null) s.clearReplayCheckpoints();
+        LocalDate start = checkpoint != null ? checkpoint.getKey() : firstRecordedDate(s);
+        var replay = new Replay(changedWeek, start);
+        if (checkpoint != null) {
+            replay.balance = checkpoint.getValue();
+            replay.closeWeek(start.minusWeeks(1));
+        }
+        if (start != null) {
+            for (LocalDate d = start; !d.isAfter(replay.today); d = d.plusDays(1)) replay.replayDay(d);
+        }
+        replay.finish();
+        log.info("Balance replayed from {}{}", start, checkpoint != null ? " (checkpoint)" : "");
         // streaks already stored in u.getStreaks()
+    }
+
+    // first date with a log, goal completion, purchase or history extra; null if there is none
+    private static LocalDate firstRecordedDate(com.buseiny.app.model.AppState s) {
+        var u = s.getAnna();
+        LocalDate first = null;
+        for (var map : List.of(u.getDaily(), u.getHistoryExtras())) {
+            var d = map.firstDate();
+            if (d != null && (first == null || d.isBefore(first))) first = d;
+        }
+        for (var g : s.getGoals()) {
+            if (g.completedAt() != null && (first == null || g.completedAt().toLocalDate().isBefore(first))) first = g.completedAt().toLocalDate();
+        }
+        for (var p : u.getPurchases()) {
+            if (p.purchasedAt() != null && (first == null || p.purchasedAt().toLocalDate().isBefore(first))) first = p.purchasedAt().toLocalDate();
+        }
+        return first;
+    }
+
+    private static void putLedger(UserState u, LocalDate date, List<HistoryDTO.Item> items) {
+        String key = date.toString();
+        if (items.isEmpty()) {
+            if (u.getLedger().containsKey(date)) u.getLedger().remove(key);
+        } else if (!items.equals(u.getLedger().get(date))) {
+            u.getLedger().put(key, items);
+        }
+    }
 
-        state.save();
+    private static int sum(List<HistoryDTO.Item> items) {
+        return items.stream().mapToInt(HistoryDTO.Item::points).sum();
     }
 }
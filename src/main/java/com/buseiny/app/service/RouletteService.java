@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 
@@ -15,16 +16,21 @@ import java.util.function.Function;
 @Slf4j
 public class RouletteService {
     private final StateService state;
+    private final ClockService clock;
     private record FixedDaily(String id, int reward, Function<DailyLog, Boolean> isDone) {}
 
-    public RouletteService(StateService state) {
+    public RouletteService(StateService state, ClockService clock) {
         this.state = state;
+        this.clock = clock;
     }
 
-    public synchronized RouletteDTO getTodayRoulette() throws IOException {
-        state.processDayBoundariesIfNeeded();
+    public RouletteDTO getTodayRoulette() throws IOException {
+        return state.read(this::today);
+    }
+
+    private RouletteDTO today() {
         var u = state.getState().getAnna();
-        var today = LocalDate.now(state.zone());
+        var today = clock.today();
         if (u.getTodayRoulette() != null && today.equals(u.getTodayRoulette().getDate())) {
             return toDTO(u.getTodayRoulette(), false, effectMessage(u.getTodayRoulette()));
         }
@@ -33,10 +39,14 @@ public class RouletteService {
         return toDTO(rs, true, "Spin the roulette ✨");
     }
 
-    public synchronized RouletteDTO spinRoulette() throws IOException {
+    public CompletableFuture<RouletteDTO> spinRoulette() {
+        return state.mutateAsync("rouletteSpun", this::spin);
+    }
+
+    private RouletteDTO spin() throws IOException {
         state.processDayBoundariesIfNeeded();
         var u = state.getState().getAnna();
-        var today = LocalDate.now(state.zone());
+        var today = clock.today();
         if (u.getTodayRoulette() != null && today.equals(u.getTodayRoulette().getDate())) {
             return toDTO(u.getTodayRoulette(), false, "Already spun today 💫");
         }
@@ -75,15 +85,13 @@ public class RouletteService {
                 } else {
                     rs.setEffect(RouletteEffect.BONUS_POINTS);
                     rs.setBonusPoints(1 + ThreadLocalRandom.current().nextInt(5));
-                    state.addBalance(rs.getBonusPoints());
-                    state.addHistory(LocalDate.now(state.zone()), "Рулетка бонус", rs.getBonusPoints());
+                    state.addBalanceWithHistory(clock.today(), "Рулетка бонус", rs.getBonusPoints());
                 }
             }
             case BONUS_POINTS -> {
                 int pts = 1 + ThreadLocalRandom.current().nextInt(5);
                 rs.setBonusPoints(pts);
-                state.addBalance(pts);
-                state.addHistory(LocalDate.now(state.zone()), "Рулетка бонус", pts);
+                state.addBalanceWithHistory(clock.today(), "Рулетка бонус", pts);
             }
             case SHOP_DISCOUNT_50 -> {
                 var items = state.getState().getShop();
@@ -113,7 +121,6 @@ public class RouletteService {
 
         u.setTodayRoulette(rs);
         log.info("Roulette rolled: {}", rs.getEffect());
-        state.save();
         return toDTO(rs, false, effectMessage(rs));
     }
 
@@ -129,7 +136,7 @@ public class RouletteService {
                 rs.getFreeShopId(),
                 canSpin,
                 msg,
-                rs.getDate().plusDays(1).atStartOfDay(state.zone()).toInstant().toString()
+                rs.getDate().plusDays(1).atStartOfDay(clock.zone()).toInstant().toString()
         );
     }
 
@@ -146,24 +153,18 @@ public class RouletteService {
 
     private String prettyDaily(String id) {
         if (id == null) return "";
-        return state.getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(id))
-                .findFirst().map(com.buseiny.app.model.DailyTaskDef::title)
+        return state.getState().taskIndex().find(id).map(com.buseiny.app.model.DailyTaskDef::title)
                 .orElse(id);
     }
 
     private String goalTitle(String goalId) {
         if (goalId == null) return "";
-        return state.getState().getGoals().stream()
-                .filter(g -> g.id().equals(goalId))
-                .findFirst().map(OneTimeGoal::title).orElse(goalId);
+        return state.getState().goalIndex().find(goalId).map(OneTimeGoal::title).orElse(goalId);
     }
 
     private String shopTitle(String id) {
         if (id == null) return "";
-        return state.getState().getShop().stream()
-                .filter(s -> s.id().equals(id))
-                .findFirst().map(ShopItem::title).orElse(id);
+        return state.getState().shopIndex().find(id).map(ShopItem::title).orElse(id);
     }
 
     private String genericTitle(String gid) {
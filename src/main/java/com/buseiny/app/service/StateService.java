@@ -4,105 +4,229 @@ import com.buseiny.app.dto.HistoryDTO;
 import com.buseiny.app.model.*;
 import com.buseiny.app.repository.StateRepository;
 import com.buseiny.app.util.TimeUtil;
-import com.buseiny.app.dto.WeeklyTaskDTO;
+import com.buseiny.app.dto.StatusDTO;
+import com.buseiny.app.dto.StatusDeltaDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 @Service
 @Slf4j
 public class StateService {
 
-    @Value("${app.timezone}")
-    private String timezone;
+    // commands waiting for the writer thread; callers block when it is full
+    @Value("${app.commands.queueSize:1024}")
+    private int queueSize;
 
     private final StateRepository repo;
-    public StateService(StateRepository repo){
+    private final ClockService clock;
+    // runs what callers chain on mutateAsync(), off the command and journal threads
+    private final Executor callbacks;
+    // Spring's mapper, so the cached status JSON matches what controllers would write
+    private final ObjectMapper mapper;
+    // applies every mutation, including day-boundary processing, on one thread; reads never wait for it
+    private CommandQueue commands;
+    private StatusProjection projection;
+    // published view a read() on this thread works on
+    private final ThreadLocal<AppState> pinned = new ThreadLocal<>();
+    // epoch millis of the next local midnight and the next Monday midnight; until the first one
+    // passes there is nothing to roll over. Written by the command thread only.
+    private volatile long nextDayBoundary;
+    private volatile long nextWeekBoundary;
+
+    public StateService(StateRepository repo, ClockService clock,
+                        @Qualifier("applicationTaskExecutor") Executor callbacks, ObjectMapper mapper){
         this.repo = repo;
+        this.clock = clock;
+        this.callbacks = callbacks;
+        this.mapper = mapper;
     }
 
-    public synchronized AppState getState(){ return repo.get(); }
-    public ZoneId zone(){ return TimeUtil.zone(timezone); }
+    @PostConstruct
+    void startCommands() {
+        projection = new StatusProjection(clock, mapper);
+        projection.update(repo.view(), null);
+        repo.onPublish(projection::update);
+        commands = new CommandQueue(queueSize, repo::commit);
+    }
 
-    public synchronized void save() throws IOException {
-        repo.save();
+    @PreDestroy
+    void stopCommands() {
+        commands.close();
     }
 
-    private String todayKey(){
-        return LocalDate.now(zone()).toString();
+    /** Runs {@code listener} with every newly published view, see {@link StateRepository#onPublish}. */
+    void onPublish(BiConsumer<AppState, Set<StateSection>> listener) {
+        repo.onPublish(listener);
     }
 
-    DailyLog todayLog(){
-        var daily = getState().getAnna().getDaily();
-        return daily.computeIfAbsent(todayKey(), k -> new DailyLog());
-    }
-
-    int sumWeeklyGoalMinutesForWeek(LocalDate weekStart){
-        // Sums minutes for the first minutes-type task that has a weekly goal
-        var minutesTaskOpt = getState().getDailyTasks().stream()
-                .filter(t -> t.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0)
-                .findFirst();
-        if (minutesTaskOpt.isEmpty()) return 0;
-        String taskId = minutesTaskOpt.get().id();
-        LocalDate d = weekStart;
-        int sum = 0;
-        for (int i=0;i<7;i++){
-            String key = d.toString();
-            var log = getState().getAnna().getDaily().get(key);
-            if (log != null){
-                Integer m = log.getMinutes().get(taskId);
-                if (m != null) sum += m;
-            }
-            d = d.plusDays(1);
+    /**
+     * State for the current thread: the live state inside a mutation, the view pinned by
+     * {@link #read} inside a read, and the latest published view anywhere else.
+     */
+    public AppState getState(){
+        var view = pinned.get();
+        if (view != null) return view;
+        return commands.isWriterThread() ? repo.get() : repo.view();
+    }
+    public ZoneId zone(){ return clock.zone(); }
+
+    @FunctionalInterface
+    public interface Mutation<T> {
+        T apply() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Query<T> {
+        T apply() throws IOException;
+    }
+
+    /**
+     * Runs a read-only {@code query} against the state published by the last mutation, without locking.
+     * Every {@link #getState()} in the query sees that same version, even if mutations commit meanwhile.
+     */
+    public <T> T read(Query<T> query) throws IOException {
+        if (pinned.get() != null || commands.isWriterThread()) return query.apply();
+        pinned.set(repo.view());
+        try {
+            return query.apply();
+        } finally {
+            pinned.remove();
         }
-        return sum;
     }
 
-    private int countDailyForWeek(LocalDate weekStart, String dailyId){
-        LocalDate d = weekStart;
-        int cnt = 0;
-        for (int i=0;i<7;i++){
-            if (isDailyDone(d, dailyId)) cnt++;
-            d = d.plusDays(1);
+    /**
+     * Runs {@code action} on the writer thread, after every mutation queued before it, and returns
+     * its result once its changes are journaled as part of an {@code event} commit with the required
+     * durability. Mutations queued together share one commit. Called from inside a mutation,
+     * {@code action} simply runs as part of it.
+     */
+    public <T> T mutate(String event, Mutation<T> action) throws IOException {
+        if (commands.isWriterThread()) return action.apply();
+        if (pinned.get() != null) throw new IllegalStateException("mutate() called inside read()");
+        try {
+            return commands.submit(event, action).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + event);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IOException(event + " failed", cause);
         }
-        return cnt;
+    }
+
+    /**
+     * Like {@link #mutate} without blocking the caller: the future completes with the result of
+     * {@code action} on the application task executor, so stages chained on it never run on the
+     * command or journal thread.
+     */
+    public <T> CompletableFuture<T> mutateAsync(String event, Mutation<T> action) {
+        if (commands.isWriterThread()) {
+            try {
+                return CompletableFuture.completedFuture(action.apply());
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (pinned.get() != null) throw new IllegalStateException("mutateAsync() called inside read()");
+        try {
+            return commands.submit(event, action).thenApplyAsync(r -> r, callbacks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new InterruptedIOException("Interrupted while queueing " + event));
+        }
+    }
+
+    /** Journals pending changes without waiting for them to become durable; only inside a mutation. */
+    void save(String event) throws IOException {
+        if (!commands.isWriterThread()) throw new IllegalStateException("save() outside mutate()");
+        repo.commit(event);
+    }
+
+    /**
+     * Applies weekly results, roulette penalties and streak resets that became due since the last call.
+     * Runs from the scheduler and at startup, so reads never have to; does not queue anything
+     * before the next local midnight.
+     */
+    public void processDayBoundaries() throws IOException {
+        if (clock.millis() < nextDayBoundary) return;
+        mutate("dayBoundary", () -> {
+            processDayBoundariesIfNeeded();
+            return null;
+        });
+    }
+
+    /** Full state in the legacy single-file JSON format, see {@link StateRepository#exportJson()}. */
+    public byte[] exportState() throws IOException {
+        return read(repo::exportJson);
+    }
+
+    private String todayKey(){
+        return clock.today().toString();
+    }
+
+    /** Today's log, or a new one not yet in the state; leaves the state as it is. */
+    DailyLog todayLog(){
+        var log = getState().getAnna().getDaily().get(todayKey());
+        return log != null ? log : new DailyLog();
+    }
+
+    /** Stores {@code log}, from {@link #todayLog()}, as changed; call it once the caller has changed it. */
+    void todayLogChanged(DailyLog log){
+        getState().getAnna().getDaily().put(todayKey(), log); // marks the day dirty
     }
 
     private int weeklyRequirement(String dailyId){
-        var opt = getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(dailyId))
-                .findFirst();
+        return weeklyRequirement(getState(), dailyId);
+    }
+
+    static int weeklyRequirement(AppState s, String dailyId){
+        var opt = s.taskIndex().find(dailyId);
         return opt.map(d -> d.weeklyRequiredCount() == null || d.weeklyRequiredCount() <= 0 ? 1 : d.weeklyRequiredCount()).orElse(1);
     }
 
     private int dailyRewardById(String dailyId){
-        return getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(dailyId))
-                .findFirst()
+        return getState().taskIndex().find(dailyId)
                 .map(com.buseiny.app.model.DailyTaskDef::dailyReward)
                 .orElse(0);
     }
 
-    private void applyWeeklyPenalties(LocalDate weekStart){
-        var today = LocalDate.now(zone());
-        List<String> ids = new ArrayList<>();
-        for (var def : getState().getDailyTasks()) ids.add(def.id());
-        for (var id : ids){
-            int done = countDailyForWeek(weekStart, id);
-            int req = weeklyRequirement(id);
-            if (done < req){
-                int miss = req - done;
-                int pen = -5 * Math.abs(dailyRewardById(id)) * miss;
-                if (pen != 0){
-                    addBalance(pen);
-                    addHistory(today, "Штраф за неделю: " + prettyDaily(id), pen);
-                }
-            }
+    /**
+     * Results of the week starting {@code weekStart} under the current task definitions: the weekly
+     * minutes bonus (+14) or fine (-20) and a penalty of 5 × reward per missed required day.
+     * The balance is left at 0 for the caller to fill in.
+     */
+    WeekSummary weekOutcome(LocalDate weekStart){
+        var week = getState().weeks().week(weekStart);
+        Integer minutesResult = getState().weeklyGoalTask()
+                .map(t -> week.minutes(t.id()) >= t.weeklyMinutesGoal() ? 14 : -20)
+                .orElse(null);
+        List<WeekSummary.Task> tasks = new ArrayList<>();
+        int penalties = 0;
+        for (var def : getState().getDailyTasks()){
+            int done = week.daysDone(def.id());
+            int req = weeklyRequirement(def.id());
+            int pen = done < req ? -5 * Math.abs(dailyRewardById(def.id())) * (req - done) : 0;
+            tasks.add(new WeekSummary.Task(def.id(), done, week.minutes(def.id()), req, pen));
+            penalties += pen;
         }
+        return new WeekSummary(weekStart, List.copyOf(tasks), minutesResult, penalties, 0);
     }
 
     LocalDate firstFullWeekStart(){
@@ -110,13 +234,13 @@ public class StateService {
         return TimeUtil.firstMondayAfter(installed);
     }
 
-    public synchronized void processWeekIfNeeded() throws IOException {
-        LocalDate today = LocalDate.now(zone());
+    private void processWeekIfNeeded() throws IOException {
+        LocalDate today = clock.today();
         LocalDate currentWeekStart = TimeUtil.weekStartMonday(today);
         LocalDate lastProcessed = getState().getLastProcessedWeekStart();
         if (lastProcessed == null){
             getState().setLastProcessedWeekStart(currentWeekStart);
-            save();
+            save("weekProcessed");
             return;
         }
         // process all completed weeks between lastProcessed and currentWeekStart
@@ -124,32 +248,45 @@ public class StateService {
             // week [lastProcessed .. lastProcessed+6] is complete
             LocalDate weekStart = lastProcessed;
             if (!weekStart.isBefore(firstFullWeekStart())){
-                var minutesTaskOpt = getState().getDailyTasks().stream()
-                        .filter(t -> t.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0)
-                        .findFirst();
-                if (minutesTaskOpt.isPresent()){
-                    int minutes = sumWeeklyGoalMinutesForWeek(weekStart);
-                    int goal = minutesTaskOpt.get().weeklyMinutesGoal();
-                    if (minutes >= goal){
-                        addBalance(14);
-                    } else {
-                        addBalance(-20);
+                var outcome = weekOutcome(weekStart);
+                var result = outcome.minutesResult();
+                if (result != null) addBalance(result > 0 ? "Недельный бонус" : "Недельный штраф", result);
+                for (var t : outcome.tasks()){
+                    if (t.penalty() != 0){
+                        addBalanceWithHistory(today, "Штраф за неделю: " + prettyDaily(t.id()), t.penalty());
                     }
                 }
-                applyWeeklyPenalties(weekStart);
+                getState().putWeekSummary(outcome.withBalance(getState().getAnna().getBalance()));
             }
             lastProcessed = lastProcessed.plusWeeks(1);
         }
         if (!lastProcessed.equals(getState().getLastProcessedWeekStart())){
             getState().setLastProcessedWeekStart(lastProcessed);
-            save();
+            save("weekProcessed");
         }
     }
 
-    synchronized void processDayBoundariesIfNeeded() throws IOException {
-        processWeekIfNeeded();
+    /**
+     * Rolls over to the current day if a local midnight passed since the last rollover: settles
+     * closed weeks (only past a Monday), applies a missed DAILY_X2 penalty and resets the streaks
+     * of tasks missed yesterday. Called at the start of every mutation; otherwise one comparison.
+     */
+    void processDayBoundariesIfNeeded() throws IOException {
+        if (clock.millis() < nextDayBoundary) return;
+        long now = clock.millis();
+        var zone = zone();
+        var today = clock.today();
+        if (now >= nextWeekBoundary) processWeekIfNeeded();
+        applyRoulettePenalty(today);
+        resetStreaks(today);
+        nextWeekBoundary = TimeUtil.weekStartMonday(today).plusWeeks(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        nextDayBoundary = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        projection.rollover(repo.view()); // a commit with changes publishes again
+        log.debug("Rolled over to {}", today);
+    }
+
+    private void applyRoulettePenalty(LocalDate today) throws IOException {
         var u = getState().getAnna();
-        var today = LocalDate.now(zone());
         var rs = u.getTodayRoulette();
         if (rs == null) return;
         if (rs.getEffect() == RouletteEffect.DAILY_X2
@@ -158,7 +295,8 @@ public class StateService {
             String id = rs.getDailyId();
             if (id == null) {
                 rs.setDailyPenaltyApplied(true);
-                save();
+                getState().markDirty(StateSection.ROULETTE);
+                save("roulettePenalty");
                 return;
             }
             if (id.startsWith("g:")) {
@@ -173,20 +311,23 @@ public class StateService {
             var dailyDone = isDailyDone(rs.getDate(), id);
             if (!dailyDone && base != null && base != 0) {
                 int pen = -Math.abs(base);
-                addBalance(pen);
-                addHistory(today, "Штраф за пропуск: " + prettyDaily(id), pen);
+                addBalanceWithHistory(today, "Штраф за пропуск: " + prettyDaily(id), pen);
             }
             rs.setDailyPenaltyApplied(true);
-            save();
+            getState().markDirty(StateSection.ROULETTE);
+            save("roulettePenalty");
         }
     }
 
     private boolean isDailyDone(LocalDate date, String dailyId){
+        return isDailyDone(getState(), date, dailyId);
+    }
+
+    static boolean isDailyDone(AppState s, LocalDate date, String dailyId){
         if (dailyId == null) return false;
-        var log = getState().getAnna().getDaily().get(date.toString());
-        var opt = getState().getDailyTasks().stream().filter(d -> d.id().equals(dailyId)).findFirst();
-        if (opt.isEmpty()) return false;
-        var def = opt.get();
+        var log = s.getAnna().getDaily().get(date);
+        var def = s.taskIndex().get(dailyId);
+        if (def == null) return false;
         if (log == null) return false;
         if (def.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES) {
             Integer m = log.getMinutes().get(dailyId);
@@ -196,24 +337,31 @@ public class StateService {
         }
     }
 
-    synchronized void addBalance(int delta){
+    /** Changes the balance and enters the change in today's ledger under {@code label}. */
+    void addBalance(String label, int delta){
+        getState().getAnna().addLedgerEntry(clock.today(), label, applyDelta(delta));
+    }
+
+    // the change actually made, which differs from delta when the balance would drop below 0
+    private int applyDelta(int delta){
         var u = getState().getAnna();
-        u.setBalance(Math.max(0, u.getBalance() + delta)); // balance never drops below 0
+        int before = u.getBalance();
+        u.setBalance(Math.max(0, before + delta)); // balance never drops below 0
         log.info("Balance adjusted by {} to {}", delta, u.getBalance());
+        return u.getBalance() - before;
     }
 
     void addDailyWithRouletteBonus(String dailyId, int base){
-        int mult = isRouletteDailyToday(dailyId) ? 2 : 1;
-        addBalance(base * mult);
-        if (mult == 2) {
-            addHistory(LocalDate.now(zone()), "Рулетка бонус: " + prettyDaily(dailyId), base);
+        addBalance("Daily: " + prettyDaily(dailyId), base);
+        if (isRouletteDailyToday(dailyId)) {
+            addBalanceWithHistory(clock.today(), "Рулетка бонус: " + prettyDaily(dailyId), base);
         }
     }
 
     private boolean isRouletteDailyToday(String dailyId){
         var u = getState().getAnna();
         var rs = u.getTodayRoulette();
-        var today = LocalDate.now(zone());
+        var today = clock.today();
         return rs != null
                 && today.equals(rs.getDate())
                 && rs.getEffect() == RouletteEffect.DAILY_X2
@@ -221,126 +369,86 @@ public class StateService {
     }
 
     private int effectiveCostToday(String itemId, int baseCost){
-        var rs = getState().getAnna().getTodayRoulette();
-        if (rs == null || !LocalDate.now(zone()).equals(rs.getDate())) return baseCost;
+        return effectiveCost(getState(), clock.today(), itemId, baseCost);
+    }
+
+    // cost of a shop item on {@code today}, after that day's roulette discount
+    static int effectiveCost(AppState s, LocalDate today, String itemId, int baseCost){
+        var rs = s.getAnna().getTodayRoulette();
+        if (rs == null || !today.equals(rs.getDate())) return baseCost;
         if (itemId.equals(rs.getFreeShopId())) return 0;
         if (itemId.equals(rs.getDiscountedShopId())) return Math.max(0, baseCost / 2);
         return baseCost;
     }
 
+    /**
+     * Stores a history item that recalculation replays, and enters it in the ledger; its points,
+     * if any, must already be applied to the balance.
+     */
     void addHistory(LocalDate date, String label, int points){
-        var extras = getState().getAnna().getHistoryExtras();
-        extras.computeIfAbsent(date.toString(), k -> new ArrayList<>())
-                .add(new HistoryDTO.Item(label, points));
+        addExtra(date, label, points);
+        getState().getAnna().addLedgerEntry(date, label, points);
     }
 
-    public synchronized void addBalanceWithHistory(LocalDate date, String label, int delta){
-        addBalance(delta);
-        addHistory(date, label, delta);
+    /** {@link #addBalance} for changes that recalculation cannot derive from the logs. */
+    public void addBalanceWithHistory(LocalDate date, String label, int delta){
+        addExtra(date, label, delta);
+        getState().getAnna().addLedgerEntry(date, label, applyDelta(delta));
     }
 
-    private String prettyDaily(String id){
+    private void addExtra(LocalDate date, String label, int points){
+        var extras = getState().getAnna().getHistoryExtras();
+        var items = new ArrayList<>(extras.getOrDefault(date, List.of()));
+        items.add(new HistoryDTO.Item(label, points));
+        extras.put(date.toString(), items);
+    }
+
+    String prettyDaily(String id){
         if (id == null) return "";
-        return getState().getDailyTasks().stream()
-                .filter(d -> d.id().equals(id))
-                .findFirst()
+        return getState().taskIndex().find(id)
                 .map(com.buseiny.app.model.DailyTaskDef::title)
                 .orElse(id);
     }
 
     // --- Public API used by controllers ---
-    public synchronized Map<String,Object> status() throws IOException {
-        processDayBoundariesIfNeeded();
-        var u = getState().getAnna();
-        var today = LocalDate.now(zone());
-        var weekStart = TimeUtil.weekStartMonday(today);
-        var weekEndInstant = TimeUtil.weekEndInstant(today, zone());
-
-        // aggregate week minutes
-        int weekMinutes = 0;
-        Integer weekGoalMinutes = null;
-        // take first minutes-type task with weekly goal
-        var minutesTaskOpt = getState().getDailyTasks().stream()
-                .filter(t -> t.kind() == com.buseiny.app.model.DailyTaskKind.MINUTES && t.weeklyMinutesGoal() != null && t.weeklyMinutesGoal() > 0)
-                .findFirst();
-        if (minutesTaskOpt.isPresent()){
-            var minutesTask = minutesTaskOpt.get();
-            weekGoalMinutes = minutesTask.weeklyMinutesGoal();
-            for (int i=0;i<7;i++){
-                var d = weekStart.plusDays(i).toString();
-                var log = u.getDaily().get(d);
-                if (log != null) weekMinutes += log.getMinutes().getOrDefault(minutesTask.id(), 0);
+    /** The {@code /api/me} payload of the current version, see {@link StatusProjection}. */
+    public StatusDTO status() throws IOException {
+        return currentStatus().dto();
+    }
+
+    /** {@link #status()} as JSON, serialized once per version. */
+    public byte[] statusJson() throws IOException {
+        return currentStatus().json();
+    }
+
+    /**
+     * Changes of {@link #status()} since the client's version {@code since}; null if that version
+     * is no longer kept or the change needs the full status, see {@link StatusDeltaDTO#between}.
+     */
+    public StatusDeltaDTO statusDelta(long since) throws IOException {
+        var from = projection.at(since);
+        if (from == null) return null;
+        var to = currentStatus();
+        return StatusDeltaDTO.between(since, from.dto(), to.version(), to.dto());
+    }
+
+    private StatusProjection.Status currentStatus() throws IOException {
+        return read(() -> {
+            var view = getState();
+            var today = clock.today();
+            if (!commands.isWriterThread()) {
+                var cached = projection.current(view.getJournalSeq(), today);
+                if (cached != null) return cached;
             }
-        }
-
-        var todayLog = u.getDaily().getOrDefault(today.toString(), new DailyLog());
-
-        Map<String, Boolean> todayGenericDone = new HashMap<>();
-
-        Map<String, Integer> genericStreaks = new HashMap<>(u.getStreaks());
-
-        Map<String,Object> map = new HashMap<>();
-        map.put("username", u.getUsername());
-        map.put("avatarUrl", u.getAvatarUrl());
-        map.put("balance", u.getBalance());
-        map.put("weekMinutes", weekMinutes);
-        map.put("weekGoalMinutes", weekGoalMinutes == null ? 0 : weekGoalMinutes);
-        map.put("secondsUntilWeekEndEpoch", weekEndInstant.getEpochSecond());
-        map.put("currentWeekStart", weekStart.toString());
-        map.put("goals", getState().getGoals());
-        // shop with effectiveCost (considering today's roulette discounts)
-        List<Map<String,Object>> shopList = new ArrayList<>();
-        for (var s : getState().getShop()){
-            Map<String,Object> it = new HashMap<>();
-            it.put("id", s.id());
-            it.put("title", s.title());
-            it.put("cost", s.cost());
-            it.put("effectiveCost", effectiveCostToday(s.id(), s.cost()));
-            shopList.add(it);
-        }
-        map.put("shop", shopList);
-        // Unified tasks list with today's state
-        // Unified tasks list with today's state
-        List<Map<String,Object>> tasks = new ArrayList<>();
-        for (var def : getState().getDailyTasks()){
-            Map<String,Object> t = new HashMap<>();
-            t.put("id", def.id());
-            t.put("title", def.title());
-            t.put("kind", def.kind().name());
-            t.put("dailyReward", def.dailyReward());
-            t.put("minutesPerDay", def.minutesPerDay());
-            t.put("weeklyMinutesGoal", def.weeklyMinutesGoal());
-            t.put("streakEnabled", def.streakEnabled());
-            t.put("weeklyRequiredCount", def.weeklyRequiredCount());
-            int todayMinutes = todayLog.getMinutes().getOrDefault(def.id(), 0);
-            boolean todayDone = isDailyDone(today, def.id());
-            int streak = 0;
-            if (def.streakEnabled()){
-                streak = u.getStreaks().getOrDefault(def.id(), 0);
-            }
-            t.put("todayMinutes", todayMinutes);
-            t.put("todayDone", todayDone);
-            t.put("streak", streak);
-            tasks.add(t);
-        }
-        map.put("tasks", tasks);
-        List<WeeklyTaskDTO> weekly = new ArrayList<>();
-        for (var def : getState().getDailyTasks()){
-            weekly.add(new WeeklyTaskDTO(def.id(), def.title(), weeklyRequirement(def.id()), countDailyForWeek(weekStart, def.id())));
-        }
-        map.put("weekDaily", weekly);
-        map.put("gifts", u.getGifts());
-        return map;
+            return projection.build(view, today);
+        });
     }
 
 
-    public synchronized void resetStreaksIfMissedYesterday() throws IOException {
-        processDayBoundariesIfNeeded();
+    private void resetStreaks(LocalDate today) {
         var u = getState().getAnna();
-        var zone = zone();
-        var today = LocalDate.now(zone);
         var yesterday = today.minusDays(1);
-        var yLog = u.getDaily().get(yesterday.toString());
+        var yLog = u.getDaily().get(yesterday);
 
         boolean changed = false;
 
@@ -360,70 +468,75 @@ public class StateService {
         }
 
         if (changed) {
-            save();
+            getState().markDirty(StateSection.STREAKS);
             log.info("Streaks reset for missed tasks on {}", yesterday);
         }
     }
 
-    public synchronized boolean completeGoal(String id) throws IOException {
+    public CompletableFuture<Boolean> completeGoal(String id) {
+        return mutateAsync("goalCompleted", () -> doCompleteGoal(id));
+    }
+
+    private boolean doCompleteGoal(String id) throws IOException {
         processDayBoundariesIfNeeded();
-        for (int i = 0; i < getState().getGoals().size(); i++) {
-            var g = getState().getGoals().get(i);
-            if (g.id().equals(id)) {
-                if (!g.isCompleted()) {
-                    var updated = new OneTimeGoal(g.id(), g.title(), g.reward(), LocalDateTime.now(zone()));
-                    getState().getGoals().set(i, updated);
-                    int reward = g.reward();
-                    var rs = getState().getAnna().getTodayRoulette();
-                    if (rs != null
-                            && LocalDate.now(zone()).equals(rs.getDate())
-                            && rs.getEffect() == RouletteEffect.GOAL_X2
-                            && g.id().equals(rs.getGoalId())) {
-                        reward *= 2;
-                        addHistory(LocalDate.now(zone()), "Рулетка бонус: цель x2 " + g.title(), g.reward());
-                    }
-                    addBalance(reward);
-                    save();
-                    return true;
-                }
-                return false;
-            }
+        int i = getState().goalIndex().ordinal(id);
+        if (i < 0) return false;
+        var g = getState().getGoals().get(i);
+        if (g.isCompleted()) return false;
+        var updated = new OneTimeGoal(g.id(), g.title(), g.reward(), clock.now());
+        getState().getGoals().set(i, updated);
+        getState().markDirty(StateSection.GOALS);
+        addBalance("Achievement: " + g.title(), g.reward());
+        var rs = getState().getAnna().getTodayRoulette();
+        if (rs != null
+                && clock.today().equals(rs.getDate())
+                && rs.getEffect() == RouletteEffect.GOAL_X2
+                && g.id().equals(rs.getGoalId())) {
+            addBalanceWithHistory(clock.today(), "Рулетка бонус: цель x2 " + g.title(), g.reward());
         }
-        return false;
+        return true;
     }
 
-    public synchronized boolean purchase(String id) throws IOException {
+    public CompletableFuture<Boolean> purchase(String id) {
+        return mutateAsync("purchase", () -> doPurchase(id));
+    }
+
+    private boolean doPurchase(String id) throws IOException {
         processDayBoundariesIfNeeded();
         var u = getState().getAnna();
-        var opt = getState().getShop().stream().filter(s -> s.id().equals(id)).findFirst();
+        var opt = getState().shopIndex().find(id);
         if (opt.isEmpty()) return false;
         var item = opt.get();
         int cost = effectiveCostToday(item.id(), item.cost());
         if (u.getBalance() < cost) return false;
-        u.setBalance(u.getBalance() - cost);
-        var when = LocalDateTime.now(zone());
-        u.getPurchases().add(new Purchase(item.id(), item.title(), cost, when));
-        save();
+        addBalance("Покупка: " + item.title(), -cost);
+        var when = clock.now();
+        u.addPurchase(new Purchase(item.id(), item.title(), cost, when));
         return true;
     }
 
-    public synchronized List<Purchase> getPurchases() throws IOException {
-        processDayBoundariesIfNeeded();
-        var list = new ArrayList<>(getState().getAnna().getPurchases());
-        list.sort(Comparator.comparing(Purchase::purchasedAt).reversed());
-        return list;
+    public List<Purchase> getPurchases() throws IOException {
+        return read(() -> {
+            var list = new ArrayList<>(getState().getAnna().getPurchases());
+            list.sort(Comparator.comparing(Purchase::purchasedAt).reversed());
+            return list;
+        });
     }
 
-    public synchronized boolean acceptGift(String id) throws IOException {
+    public CompletableFuture<Boolean> acceptGift(String id) {
+        return mutateAsync("giftAccepted", () -> doAcceptGift(id));
+    }
+
+    private boolean doAcceptGift(String id) throws IOException {
         processDayBoundariesIfNeeded();
         var u = getState().getAnna();
         var it = u.getGifts().iterator();
         while (it.hasNext()) {
             var g = it.next();
             if (g.id().equals(id)) {
-                addBalanceWithHistory(LocalDate.now(zone()), "Подарок: " + g.title(), g.amount());
+                addBalanceWithHistory(clock.today(), "Подарок: " + g.title(), g.amount());
                 it.remove();
-                save();
+                getState().markDirty(StateSection.GIFTS);
                 return true;
             }
         }
@@ -431,46 +544,55 @@ public class StateService {
     }
 
     // --- Admin ---
-    public synchronized List<ShopItem> setShop(List<ShopItem> items) throws IOException {
-        getState().setShop(new ArrayList<>(items));
-        save();
-        return getState().getShop();
-    }
-    public synchronized List<OneTimeGoal> setGoals(List<OneTimeGoal> items) throws IOException {
-        getState().setGoals(new ArrayList<>(items));
-        save();
-        return getState().getGoals();
-    }
-    public synchronized List<DailyTaskDef> setDailyTasks(List<DailyTaskDef> items) throws IOException {
-        getState().setDailyTasks(new ArrayList<>(items));
-        save();
-        return getState().getDailyTasks();
+    public List<ShopItem> setShop(List<ShopItem> items) throws IOException {
+        return mutate("adminShop", () -> {
+            getState().setShop(new ArrayList<>(items));
+            return List.copyOf(getState().getShop());
+        });
+    }
+    public List<OneTimeGoal> setGoals(List<OneTimeGoal> items) throws IOException {
+        return mutate("adminGoals", () -> {
+            getState().setGoals(new ArrayList<>(items));
+            getState().clearReplayCheckpoints(); // completion dates may have moved anywhere
+            return List.copyOf(getState().getGoals());
+        });
+    }
+    public List<DailyTaskDef> setDailyTasks(List<DailyTaskDef> items) throws IOException {
+        return mutate("adminDailyTasks", () -> {
+            getState().setDailyTasks(new ArrayList<>(items));
+            getState().clearReplayCheckpoints();
+            return List.copyOf(getState().getDailyTasks());
+        });
     }
 
     // ===== Admin: balance
-    public synchronized int adminAddBalance(int delta) throws IOException {
-        var u = getState().getAnna();
-        addBalanceWithHistory(LocalDate.now(zone()), "Админ: корректировка баланса", delta);
-        save();
-        return u.getBalance();
-    }
-    public synchronized int adminSetBalance(int value) throws IOException {
-        var u = getState().getAnna();
-        int old = u.getBalance();
-        int newValue = Math.max(0, value);
-        u.setBalance(newValue);
-        int delta = newValue - old;
-        if (delta != 0){
-            addHistory(LocalDate.now(zone()), "Админ: установка баланса", delta);
-        }
-        save();
-        return u.getBalance();
+    public int adminAddBalance(int delta) throws IOException {
+        return mutate("adminBalanceAdd", () -> {
+            var u = getState().getAnna();
+            addBalanceWithHistory(clock.today(), "Админ: корректировка баланса", delta);
+            return u.getBalance();
+        });
+    }
+    public int adminSetBalance(int value) throws IOException {
+        return mutate("adminBalanceSet", () -> {
+            var u = getState().getAnna();
+            int old = u.getBalance();
+            int newValue = Math.max(0, value);
+            u.setBalance(newValue);
+            int delta = newValue - old;
+            if (delta != 0){
+                addHistory(clock.today(), "Админ: установка баланса", delta);
+            }
+            return u.getBalance();
+        });
     }
 
-    public synchronized List<Gift> adminAddGift(String title, int amount) throws IOException {
-        var u = getState().getAnna();
-        u.getGifts().add(new Gift(UUID.randomUUID().toString(), title, amount));
-        save();
-        return u.getGifts();
+    public List<Gift> adminAddGift(String title, int amount) throws IOException {
+        return mutate("adminGiftAdded", () -> {
+            var u = getState().getAnna();
+            u.getGifts().add(new Gift(UUID.randomUUID().toString(), title, amount));
+            getState().markDirty(StateSection.GIFTS);
+            return List.copyOf(u.getGifts());
+        });
     }
 }
@@ -0,0 +1,144 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.dto.StatusDTO;
+import com.buseiny.app.dto.WeeklyTaskDTO;
+import com.buseiny.app.model.AppState;
+import com.buseiny.app.model.DailyLog;
+import com.buseiny.app.model.StateSection;
+import com.buseiny.app.util.TimeUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code /api/me} payload, maintained from commits instead of rebuilt per request.
+ * Every commit reassembles the payload from the committed view, with week progress read from the
+ * state's {@link com.buseiny.app.model.WeekAggregates}; the shop prices are recomputed only if the shop
+ * or roulette changed or the day did. The payload is serialized once and published with the version it
+ * was built from, so requests for that version and day send the stored bytes. {@link #update} and
+ * {@link #rollover} are called by the command thread only.
+ */
+class StatusProjection {
+
+    /** Payload of one version, with its serialized form. */
+    record Status(long version, LocalDate today, StatusDTO dto, byte[] json) {}
+
+    private final ClockService clock;
+    private final ObjectMapper mapper;
+    private LocalDate today;
+    private LocalDate weekStart;
+    // versions kept for delta responses
+    private static final int RECENT = 64;
+
+    // kept between commits that leave shop and roulette alone, so its JSON is reused
+    private List<StatusDTO.ShopItem> shop;
+    private volatile Status published;
+    // recently published versions by number; the order queue is touched by update() only
+    private final Map<Long, Status> recent = new ConcurrentHashMap<>();
+    private final ArrayDeque<Long> recentOrder = new ArrayDeque<>();
+
+    StatusProjection(ClockService clock, ObjectMapper mapper) {
+        this.clock = clock;
+        this.mapper = mapper;
+    }
+
+    /** Payload for {@code state} built from scratch, for versions the projection does not hold. */
+    Status build(AppState state, LocalDate today) {
+        var p = new StatusProjection(clock, mapper);
+        p.rebuild(state, today);
+        return p.publish(state);
+    }
+
+    /** Payload of {@code version} on {@code today}, or null if the projection holds another one. */
+    Status current(long version, LocalDate today) {
+        var p = published;
+        return p != null && p.version() == version && p.today().equals(today) ? p : null;
+    }
+
+    /** A recently published payload by version, null if it is no longer kept. */
+    Status at(long version) {
+        return recent.get(version);
+    }
+
+    /** Folds a commit into the projection; {@code changed} null means everything. */
+    void update(AppState state, Set<StateSection> changed) {
+        var now = clock.today();
+        if (changed == null || !now.equals(today)) {
+            rebuild(state, now);
+        } else if (changed.contains(StateSection.SHOP) || changed.contains(StateSection.ROULETTE)) {
+            computeShop(state);
+        }
+        published = publish(state);
+        if (recent.put(published.version(), published) == null) recentOrder.addLast(published.version());
+        while (recentOrder.size() > RECENT) recent.remove(recentOrder.removeFirst());
+    }
+
+    /**
+     * Moves the published payload to a new day for {@code state}, the last committed view. Day-boundary
+     * processing often changes nothing, and then no commit would do it before the next mutation.
+     */
+    void rollover(AppState state) {
+        if (!clock.today().equals(today)) update(state, null);
+    }
+
+    private Status publish(AppState state) {
+        var dto = assemble(state);
+        try {
+            return new Status(state.getJournalSeq(), today, dto, mapper.writeValueAsBytes(dto));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize status", e);
+        }
+    }
+
+    private void rebuild(AppState state, LocalDate today) {
+        this.today = today;
+        this.weekStart = TimeUtil.weekStartMonday(today);
+        computeShop(state);
+    }
+
+    // shop with effectiveCost (considering today's roulette discounts)
+    private void computeShop(AppState state) {
+        List<StatusDTO.ShopItem> list = new ArrayList<>();
+        for (var s : state.getShop()) {
+            list.add(new StatusDTO.ShopItem(s.id(), s.title(), s.cost(), StateService.effectiveCost(state, today, s.id(), s.cost())));
+        }
+        shop = Collections.unmodifiableList(list);
+    }
+
+    private StatusDTO assemble(AppState state) {
+        var u = state.getAnna();
+        var goalTask = state.weeklyGoalTask();
+        var week = state.weeks().week(weekStart);
+        int weekMinutes = goalTask.map(t -> week.minutes(t.id())).orElse(0);
+        var todayLog = u.getDaily().getOrDefault(today, new DailyLog());
+
+        // Unified tasks list with today's state
+        List<StatusDTO.Task> tasks = new ArrayList<>();
+        List<WeeklyTaskDTO> weekly = new ArrayList<>();
+        for (var def : state.getDailyTasks()) {
+            tasks.add(new StatusDTO.Task(def.id(), def.title(), def.kind().name(), def.dailyReward(),
+                    def.minutesPerDay(), def.weeklyMinutesGoal(), def.streakEnabled(), def.weeklyRequiredCount(),
+                    todayLog.getMinutes().getOrDefault(def.id(), 0),
+                    StateService.isDailyDone(state, today, def.id()),
+                    def.streakEnabled() ? u.getStreaks().getOrDefault(def.id(), 0) : 0));
+            weekly.add(new WeeklyTaskDTO(def.id(), def.title(), StateService.weeklyRequirement(state, def.id()), week.daysDone(def.id())));
+        }
+        return new StatusDTO(
+                state.getJournalSeq(),
+                u.getUsername(),
+                u.getAvatarUrl(),
+                u.getBalance(),
+                weekMinutes,
+                goalTask.map(t -> t.weeklyMinutesGoal()).orElse(0),
+                TimeUtil.weekEndInstant(today, clock.zone()).getEpochSecond(),
+                weekStart.toString(),
+                state.getGoals(),
+                shop,
+                Collections.unmodifiableList(tasks),
+                Collections.unmodifiableList(weekly),
+                u.getGifts());
+    }
+}
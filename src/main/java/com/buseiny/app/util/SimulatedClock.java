@@ -0,0 +1,58 @@
+package com.buseiny.app.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual time for simulations and benchmarks: starts at a given instant, runs {@code speed}
+ * times faster than real time and can be moved forward at once with {@link #advance}.
+ */
+public final class SimulatedClock extends Clock {
+    private final ZoneId zone;
+    private final long startMillis;
+    private final long realStartNanos;
+    private final double speed;
+    private final AtomicLong skippedMillis;
+
+    public SimulatedClock(Instant start, double speed, ZoneId zone) {
+        this(zone, start.toEpochMilli(), System.nanoTime(), speed, new AtomicLong());
+    }
+
+    private SimulatedClock(ZoneId zone, long startMillis, long realStartNanos, double speed, AtomicLong skippedMillis) {
+        this.zone = zone;
+        this.startMillis = startMillis;
+        this.realStartNanos = realStartNanos;
+        this.speed = speed;
+        this.skippedMillis = skippedMillis;
+    }
+
+    /** Moves virtual time forward; every clock derived with {@link #withZone} moves along. */
+    public void advance(Duration d) {
+        if (d.isNegative()) throw new IllegalArgumentException("Simulated time only moves forward");
+        skippedMillis.addAndGet(d.toMillis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new SimulatedClock(zone, startMillis, realStartNanos, speed, skippedMillis);
+    }
+
+    @Override
+    public long millis() {
+        long elapsed = (long) ((System.nanoTime() - realStartNanos) * speed / 1_000_000);
+        return startMillis + elapsed + skippedMillis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+}
@@ -0,0 +1,51 @@
+package com.buseiny.app;
+
+import com.buseiny.app.repository.Durability;
+import com.buseiny.app.repository.SnapshotFormat;
+import com.buseiny.app.repository.StateRepository;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.time.Clock;
+
+/** Wiring of the persistence beans outside Spring, with the {@code @Value} fields set by hand. */
+public final class TestStates {
+
+    private TestStates() {}
+
+    /**
+     * Repository persisting under {@code dir}: state in {@code dir/state}, journal in {@code dir/journal},
+     * legacy single file at {@code dir/app-state.json}. Every commit is fsynced before it completes.
+     */
+    public static StateRepository repository(Path dir, Clock clock, int snapshotEvery) throws IOException {
+        var repo = new StateRepository(clock);
+        set(repo, "dataFile", dir.resolve("app-state.json").toString());
+        set(repo, "stateDir", dir.resolve("state").toString());
+        set(repo, "snapshotFormat", SnapshotFormat.BINARY);
+        set(repo, "monthCacheSize", 12);
+        set(repo, "journalDir", dir.resolve("journal").toString());
+        set(repo, "snapshotEvery", snapshotEvery);
+        set(repo, "durability", Durability.SYNC);
+        set(repo, "groupCommitMs", 0L);
+        repo.init();
+        return repo;
+    }
+
+    /** Sets a field Spring would inject, e.g. an {@code @Value} one. */
+    public static void set(Object target, String name, Object value) {
+        for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                f.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // declared further up
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " in " + target.getClass());
+    }
+}
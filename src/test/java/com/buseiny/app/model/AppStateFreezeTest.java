@@ -0,0 +1,142 @@
+package com.buseiny.app.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Published copies share what a commit left alone and never see later changes. */
+class AppStateFreezeTest {
+
+    private static final LocalDate CHANGED_DAY = LocalDate.of(2026, 3, 5);
+    private static final LocalDate UNTOUCHED_DAY = LocalDate.of(2026, 1, 14);
+
+    private AppState live;
+    private AppState v1;
+
+    @BeforeEach
+    void publishFirstView() {
+        live = new AppState();
+        live.setDailyTasks(new ArrayList<>(List.of(
+                DailyTaskDef.create("nutrition", "Nutrition", DailyTaskKind.MINUTES, 1, 60, 420, true, 1),
+                DailyTaskDef.create("yoga", "Yoga", DailyTaskKind.CHECK, 1, null, null, true, 3))));
+        live.setGoals(new ArrayList<>(List.of(new OneTimeGoal("welcome", "Welcome", 5),
+                new OneTimeGoal("marathon", "Marathon", 50, LocalDateTime.of(2026, 2, 20, 9, 0)))));
+        live.setShop(new ArrayList<>(List.of(new ShopItem("coffee", "Coffee time", 30), new ShopItem("walk", "Walk", 20))));
+        for (var d = LocalDate.of(2026, 1, 1); d.isBefore(LocalDate.of(2026, 4, 30)); d = d.plusDays(1)) {
+            var log = new DailyLog();
+            log.getMinutes().put("nutrition", 30);
+            if (d.getDayOfMonth() % 2 == 0) log.getChecks().add("yoga");
+            live.getAnna().getDaily().put(d.toString(), log);
+        }
+        v1 = publish(null);
+        // readers fill the derived data of the first view
+        v1.weeks().week(monday(CHANGED_DAY));
+        v1.weeks().week(monday(UNTOUCHED_DAY));
+        v1.streakCheckpoints().at("2026-04");
+    }
+
+    @Test
+    void dayChangeIsSeenByNewViewOnly() {
+        var log = live.getAnna().getDaily().get(CHANGED_DAY);
+        live.markDirty(StateSection.day(CHANGED_DAY.toString()));
+        log.getMinutes().put("nutrition", 90);
+        var v2 = publish(v1);
+
+        assertEquals(90, v2.getAnna().getDaily().get(CHANGED_DAY).getMinutes().get("nutrition"));
+        assertEquals(30, v1.getAnna().getDaily().get(CHANGED_DAY).getMinutes().get("nutrition"));
+        assertEquals(30 * 6 + 90, v2.weeks().week(monday(CHANGED_DAY)).minutes("nutrition"));
+        assertEquals(30 * 7, v1.weeks().week(monday(CHANGED_DAY)).minutes("nutrition"));
+        assertEquals(1, v2.weeks().week(monday(CHANGED_DAY)).daysDone("nutrition"));
+        assertEquals(0, v1.weeks().week(monday(CHANGED_DAY)).daysDone("nutrition"));
+        assertArrayEquals(fresh().streakCheckpoints().at("2026-04"), v2.streakCheckpoints().at("2026-04"));
+
+        // untouched months and weeks are the same instances
+        assertSame(v1.getAnna().getDaily().get(UNTOUCHED_DAY), v2.getAnna().getDaily().get(UNTOUCHED_DAY));
+        assertSame(v1.getAnna().getDaily().get(LocalDate.of(2026, 4, 1)), v2.getAnna().getDaily().get(LocalDate.of(2026, 4, 1)));
+        assertNotSame(v1.getAnna().getDaily().get(CHANGED_DAY), v2.getAnna().getDaily().get(CHANGED_DAY));
+        assertSame(v1.weeks().week(monday(UNTOUCHED_DAY)), v2.weeks().week(monday(UNTOUCHED_DAY)));
+        assertSame(v1.getGoals(), v2.getGoals());
+        assertSame(v1.goalIndex(), v2.goalIndex());
+        assertSame(v1.getShop(), v2.getShop());
+        assertSame(v1.taskIndex(), v2.taskIndex());
+    }
+
+    @Test
+    void goalChangeIsSeenByNewViewOnly() {
+        live.getGoals().set(0, new OneTimeGoal("welcome", "Welcome", 5, LocalDateTime.of(2026, 3, 1, 10, 0)));
+        live.markDirty(StateSection.GOALS);
+        var v2 = publish(v1);
+
+        assertTrue(v2.goalIndex().get("welcome").isCompleted());
+        assertFalse(v1.goalIndex().get("welcome").isCompleted());
+        assertEquals(List.of("welcome"), v2.goalsCompletedOn(LocalDate.of(2026, 3, 1)).stream().map(OneTimeGoal::id).toList());
+        assertEquals(List.of(), v1.goalsCompletedOn(LocalDate.of(2026, 3, 1)));
+        assertThrows(UnsupportedOperationException.class, () -> v2.getGoals().clear());
+
+        assertSame(v1.getAnna().getDaily().get(UNTOUCHED_DAY), v2.getAnna().getDaily().get(UNTOUCHED_DAY));
+        assertSame(v1.getAnna().getDaily().get(CHANGED_DAY), v2.getAnna().getDaily().get(CHANGED_DAY));
+        assertSame(v1.getShop(), v2.getShop());
+        assertSame(v1.shopIndex(), v2.shopIndex());
+    }
+
+    @Test
+    void shopChangeIsSeenByNewViewOnly() {
+        var shop = new ArrayList<>(live.getShop());
+        shop.set(1, new ShopItem("walk", "Walk of choice", 25));
+        live.setShop(shop);
+        var v2 = publish(v1);
+
+        assertEquals(25, v2.shopIndex().get("walk").cost());
+        assertEquals(20, v1.shopIndex().get("walk").cost());
+        assertEquals(25, v2.getShop().get(1).cost());
+        assertEquals(20, v1.getShop().get(1).cost());
+
+        assertSame(v1.getGoals(), v2.getGoals());
+        assertSame(v1.goalIndex(), v2.goalIndex());
+        assertSame(v1.getAnna().getDaily().get(UNTOUCHED_DAY), v2.getAnna().getDaily().get(UNTOUCHED_DAY));
+    }
+
+    @Test
+    void changesAcrossCommitsPileUp() {
+        var log = live.getAnna().getDaily().get(CHANGED_DAY);
+        live.markDirty(StateSection.day(CHANGED_DAY.toString()));
+        log.getChecks().add("yoga");
+        var v2 = publish(v1);
+        live.getGoals().set(1, new OneTimeGoal("marathon", "Marathon", 60, LocalDateTime.of(2026, 2, 20, 9, 0)));
+        live.markDirty(StateSection.GOALS);
+        var v3 = publish(v2);
+        live.setShop(new ArrayList<>(List.of(new ShopItem("coffee", "Coffee time", 35))));
+        var v4 = publish(v3);
+
+        assertTrue(v4.getAnna().getDaily().get(CHANGED_DAY).getChecks().contains("yoga"));
+        assertFalse(v1.getAnna().getDaily().get(CHANGED_DAY).getChecks().contains("yoga"));
+        assertSame(v2.getAnna().getDaily().get(CHANGED_DAY), v4.getAnna().getDaily().get(CHANGED_DAY));
+        assertEquals(60, v4.goalIndex().get("marathon").reward());
+        assertEquals(50, v2.goalIndex().get("marathon").reward());
+        assertSame(v3.goalIndex(), v4.goalIndex());
+        assertEquals(35, v4.shopIndex().get("coffee").cost());
+        assertNull(v4.shopIndex().get("walk"));
+        assertEquals(30, v3.shopIndex().get("coffee").cost());
+        assertSame(v1.getAnna().getDaily().get(UNTOUCHED_DAY), v4.getAnna().getDaily().get(UNTOUCHED_DAY));
+        assertEquals(fresh().weeks().week(monday(CHANGED_DAY)).daysDone("yoga"), v4.weeks().week(monday(CHANGED_DAY)).daysDone("yoga"));
+    }
+
+    private AppState publish(AppState previous) {
+        return live.freeze(previous, live.drainDirty(), previous == null ? 1 : previous.getJournalSeq() + 1);
+    }
+
+    // full copy of the live state, sharing nothing
+    private AppState fresh() {
+        return live.freeze(null, java.util.Set.of(), 0);
+    }
+
+    private static LocalDate monday(LocalDate d) {
+        return d.minusDays(d.getDayOfWeek().getValue() - 1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.DailyLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMonthCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final BinaryMonthCodec codec = new BinaryMonthCodec();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsSyntheticHistory() throws IOException {
+        for (var e : SyntheticMonths.generate(3, 42).entrySet()) {
+            assertEquals(e.getValue(), codec.decode(e.getKey(), codec.encode(e.getKey(), e.getValue())), e.getKey());
+        }
+    }
+
+    @Test
+    void roundTripsEdgeCases() throws IOException {
+        var log = new DailyLog();
+        log.getMinutes().put("nutrition", 0);
+        log.getMinutes().put("english", 100_000);
+        log.getChecks().add("yoga");
+        log.getMinutesAwarded().add("nutrition");
+        Map<String, DailyLog> daily = new HashMap<>();
+        daily.put("2024-02-01", new DailyLog());
+        daily.put("2024-02-29", log);
+        daily.put("2024-2-3", log); // not a canonical date, kept as a string key
+        Map<String, List<HistoryDTO.Item>> extras = new HashMap<>();
+        extras.put("2024-02-10", List.of(new HistoryDTO.Item("Рулетка: бонус", 3), new HistoryDTO.Item("Штраф", -7)));
+        extras.put("2024-02-11", List.of());
+        Map<String, List<HistoryDTO.Item>> ledger = Map.of("2024-02-29", List.of(new HistoryDTO.Item("Admin", Integer.MIN_VALUE)));
+        var seg = new SegmentedStore.MonthSegment(daily, extras, null, ledger);
+
+        assertEquals(seg, codec.decode("2024-02", codec.encode("2024-02", seg)));
+    }
+
+    @Test
+    void convertsJsonMonthsToBinary() throws IOException {
+        var months = SyntheticMonths.generate(2, 7);
+        var json = new SegmentedStore(dir, mapper, SnapshotFormat.JSON);
+        var jsonCodec = MonthCodec.of(SnapshotFormat.JSON, mapper);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (var e : months.entrySet()) files.put("months/" + e.getKey() + ".json", jsonCodec.encode(e.getKey(), e.getValue()));
+        json.write(files);
+
+        // a binary store reads the JSON months and replaces each one it writes
+        var binary = new SegmentedStore(dir, mapper, SnapshotFormat.BINARY);
+        for (var e : months.entrySet()) {
+            var seg = binary.readMonth(e.getKey());
+            assertEquals(e.getValue(), seg, e.getKey());
+            binary.write(Map.of("months/" + e.getKey() + ".bin", codec.encode(e.getKey(), seg)));
+        }
+        for (var e : months.entrySet()) {
+            assertFalse(Files.exists(dir.resolve("months/" + e.getKey() + ".json")), e.getKey());
+            assertTrue(Files.exists(dir.resolve("months/" + e.getKey() + ".bin")), e.getKey());
+            assertEquals(e.getValue(), binary.readMonth(e.getKey()), e.getKey());
+        }
+    }
+
+    @Test
+    void rejectsBadMagic() {
+        byte[] bytes = encoded();
+        bytes[0] = 'X';
+        var e = assertThrows(IOException.class, () -> codec.decode("2025-03", bytes));
+        assertTrue(e.getMessage().startsWith("Not a binary month segment"), e.getMessage());
+    }
+
+    @Test
+    void rejectsNewerVersion() {
+        byte[] bytes = encoded();
+        bytes[3] = (byte) (BinaryMonthCodec.VERSION + 1);
+        var e = assertThrows(IOException.class, () -> codec.decode("2025-03", bytes));
+        assertTrue(e.getMessage().startsWith("Unsupported month segment version"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedVarint() {
+        byte[] bytes = encoded();
+        // cut the file inside the varint of its first day, right after the version byte
+        byte[] cut = Arrays.copyOf(bytes, 5);
+        cut[4] |= (byte) 0x80;
+        var e = assertThrows(IOException.class, () -> codec.decode("2025-03", cut));
+        assertTrue(e.getMessage().startsWith("Truncated month segment"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedFile() {
+        byte[] bytes = encoded();
+        for (int len = 4; len < bytes.length; len++) {
+            byte[] cut = Arrays.copyOf(bytes, len);
+            assertThrows(IOException.class, () -> codec.decode("2025-03", cut), "length " + len);
+        }
+    }
+
+    private byte[] encoded() {
+        var months = SyntheticMonths.generate(1, 1);
+        return codec.encode("2025-03", months.get("2025-03"));
+    }
+}
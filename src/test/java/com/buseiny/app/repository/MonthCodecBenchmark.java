@@ -0,0 +1,67 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.model.AppState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Size and speed of the month codecs on {@link SyntheticMonths}, against the single-file
+ * app-state.json they replaced. Best of {@code bench.runs} (default 300) runs; off unless asked for:
+ * <pre>
+ *   mvn test -Dtest=MonthCodecBenchmark -Dbench=true [-Dbench.runs=300]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class MonthCodecBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private final int runs = Integer.getInteger("bench.runs", 300);
+
+    @ParameterizedTest(name = "{0} years")
+    @ValueSource(ints = {5, 10})
+    void months(int years) throws IOException {
+        var months = SyntheticMonths.generate(years, 42);
+        System.out.printf("%d years (%d months), best of %d runs:%n", years, months.size(), runs);
+        for (var format : SnapshotFormat.values()) {
+            var codec = MonthCodec.of(format, mapper);
+            Map<String, byte[]> files = new TreeMap<>();
+            long encode = Long.MAX_VALUE, decode = Long.MAX_VALUE;
+            for (int r = 0; r < runs; r++) {
+                long t = System.nanoTime();
+                for (var e : months.entrySet()) files.put(e.getKey(), codec.encode(e.getKey(), e.getValue()));
+                encode = Math.min(encode, System.nanoTime() - t);
+                t = System.nanoTime();
+                for (var e : files.entrySet()) codec.decode(e.getKey(), e.getValue());
+                decode = Math.min(decode, System.nanoTime() - t);
+            }
+            for (var e : files.entrySet()) assertEquals(months.get(e.getKey()), codec.decode(e.getKey(), e.getValue()));
+            long size = files.values().stream().mapToLong(b -> b.length).sum();
+            System.out.printf("  %-14s %,10d B  encode %6.2f ms  decode %6.2f ms%n", format + " months", size, encode / 1e6, decode / 1e6);
+        }
+
+        var state = SyntheticMonths.state(months);
+        byte[] single = null;
+        long save = Long.MAX_VALUE, load = Long.MAX_VALUE;
+        for (int r = 0; r < runs; r++) {
+            long t = System.nanoTime();
+            single = mapper.writeValueAsBytes(state);
+            save = Math.min(save, System.nanoTime() - t);
+            t = System.nanoTime();
+            mapper.readValue(single, AppState.class);
+            load = Math.min(load, System.nanoTime() - t);
+        }
+        System.out.printf("  %-14s %,10d B  save   %6.2f ms  load   %6.2f ms%n", "app-state.json", single.length, save / 1e6, load / 1e6);
+    }
+}
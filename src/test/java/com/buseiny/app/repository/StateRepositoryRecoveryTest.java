@@ -0,0 +1,134 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.TestStates;
+import com.buseiny.app.model.DailyLog;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateRepositoryRecoveryTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-18T03:00:00Z"), ZoneId.of("Asia/Ho_Chi_Minh"));
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopensFromLastSnapshotAndJournalTail() throws Exception {
+        var repo = TestStates.repository(dir, CLOCK, 4);
+        for (int i = 1; i <= 10; i++) change(repo, i);
+        var live = export(repo);
+        repo.close();
+
+        // snapshots at #4 and #8 compacted the journal; #9 and #10 are only in it
+        assertTrue(segmentStarts().stream().allMatch(start -> start > 8), "journal not compacted: " + segmentStarts());
+
+        var reopened = TestStates.repository(dir, CLOCK, 4);
+        assertEquals(live, export(reopened));
+        assertEquals(10, reopened.view().getJournalSeq());
+        reopened.close();
+    }
+
+    @Test
+    void tornLastRecordEndsReplay() throws Exception {
+        var repo = TestStates.repository(dir, CLOCK, 4);
+        for (int i = 1; i <= 6; i++) change(repo, i);
+        var beforeLast = export(repo);
+        change(repo, 7);
+        repo.close();
+
+        tearLastLine();
+        var reopened = TestStates.repository(dir, CLOCK, 4);
+        assertEquals(beforeLast, export(reopened));
+        assertEquals(6, reopened.view().getJournalSeq());
+
+        // the journal goes on after the torn record
+        change(reopened, 8);
+        var live = export(reopened);
+        reopened.close();
+        var again = TestStates.repository(dir, CLOCK, 4);
+        assertEquals(live, export(again));
+        again.close();
+    }
+
+    @Test
+    void migratesSingleFileState() throws Exception {
+        var legacy = dir.resolve("app-state.json");
+        try (InputStream in = getClass().getResourceAsStream("/legacy/app-state.json")) {
+            Files.copy(in, legacy);
+        }
+        JsonNode old = mapper.readTree(legacy.toFile());
+
+        var repo = TestStates.repository(dir, CLOCK, 500);
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(dir.resolve("app-state.json.migrated")));
+        var u = repo.view().getAnna();
+        assertEquals(old.path("anna").path("balance").asInt(), u.getBalance());
+        assertEquals(old.path("anna").path("balance").asInt(), u.getLedgerOpening());
+        Map<String, DailyLog> oldDaily = mapper.convertValue(old.path("anna").path("daily"), new TypeReference<>() {});
+        assertFalse(oldDaily.isEmpty());
+        assertEquals(oldDaily, Map.copyOf(u.getDaily()));
+        assertEquals(old.path("goals").size(), repo.view().getGoals().size());
+        assertEquals(old.path("dailyTasks").size(), repo.view().getDailyTasks().size());
+        var imported = export(repo);
+        repo.close();
+
+        var reopened = TestStates.repository(dir, CLOCK, 500);
+        assertEquals(imported, export(reopened));
+        reopened.close();
+    }
+
+    // one commit: a day log in one of the months before the clock's, and the balance
+    private static void change(StateRepository repo, int i) throws Exception {
+        var u = repo.get().getAnna();
+        var log = new DailyLog();
+        log.getMinutes().put("activity-1", 10 * i);
+        if (i % 2 == 0) log.getChecks().add("activity-2");
+        u.getDaily().put(LocalDate.of(2026, 1 + i % 10, i).toString(), log);
+        u.setBalance(u.getBalance() + i);
+        repo.commit("test" + i).get();
+    }
+
+    private JsonNode export(StateRepository repo) throws IOException {
+        return mapper.readTree(repo.exportJson());
+    }
+
+    private List<Long> segmentStarts() throws IOException {
+        try (Stream<Path> files = Files.list(dir.resolve("journal"))) {
+            return files.map(p -> p.getFileName().toString())
+                    .map(n -> Long.parseLong(n.substring("journal-".length(), n.length() - ".log".length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // cuts the newest record in half, as a crash in the middle of an append would
+    private void tearLastLine() throws IOException {
+        var starts = segmentStarts();
+        var segment = dir.resolve("journal").resolve(String.format("journal-%020d.log", starts.get(starts.size() - 1)));
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = bytes.length - 1; // trailing newline
+        int lineStart = end;
+        while (lineStart > 0 && bytes[lineStart - 1] != '\n') lineStart--;
+        Files.write(segment, Arrays.copyOf(bytes, lineStart + (end - lineStart) / 2));
+    }
+}
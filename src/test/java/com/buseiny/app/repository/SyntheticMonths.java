@@ -0,0 +1,62 @@
+package com.buseiny.app.repository;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.AppState;
+import com.buseiny.app.model.DailyLog;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Month segments of a made-up history of several years, as a daily user would leave it: two minutes
+ * tasks logged every day, up to four checks, a roulette extra on about every third day, and a ledger
+ * for the last year. Seeded, so every run sees the same bytes.
+ */
+final class SyntheticMonths {
+
+    private static final String[] CHECKS = {"yoga", "viet", "reading", "sport"};
+
+    private SyntheticMonths() {}
+
+    /** Months of the {@code years} years before 2026, oldest first. */
+    static SortedMap<String, SegmentedStore.MonthSegment> generate(int years, long seed) {
+        var rnd = new Random(seed);
+        SortedMap<String, SegmentedStore.MonthSegment> months = new TreeMap<>();
+        var ledgerSince = LocalDate.of(2025, 1, 1);
+        for (var d = LocalDate.of(2026 - years, 1, 1); d.getYear() < 2026; d = d.plusDays(1)) {
+            var seg = months.computeIfAbsent(YearMonth.from(d).toString(),
+                    k -> new SegmentedStore.MonthSegment(new HashMap<>(), new HashMap<>(), null, new HashMap<>()));
+            var log = new DailyLog();
+            log.getMinutes().put("english", rnd.nextInt(120));
+            log.getMinutes().put("nutrition", rnd.nextInt(500));
+            if (rnd.nextBoolean()) log.getMinutesAwarded().add("english");
+            for (var id : CHECKS) {
+                if (rnd.nextInt(3) > 0) log.getChecks().add(id);
+            }
+            seg.daily().put(d.toString(), log);
+            if (rnd.nextInt(10) < 3) {
+                seg.historyExtras().put(d.toString(), new ArrayList<>(List.of(new HistoryDTO.Item("Roulette: bonus for Yoga", 2 + rnd.nextInt(5)))));
+            }
+            if (!d.isBefore(ledgerSince)) {
+                List<HistoryDTO.Item> items = new ArrayList<>();
+                items.add(new HistoryDTO.Item("Daily: Nutrition", 1));
+                if (rnd.nextInt(5) == 0) items.add(new HistoryDTO.Item("Покупка: Coffee time", -30));
+                seg.ledger().put(d.toString(), items);
+            }
+        }
+        return months;
+    }
+
+    /** The same history as one state, for the single-file format. */
+    static AppState state(Map<String, SegmentedStore.MonthSegment> months) {
+        var s = new AppState();
+        var u = s.getAnna();
+        for (var seg : months.values()) {
+            u.getDaily().putAll(seg.daily());
+            u.getHistoryExtras().putAll(seg.historyExtras());
+            u.getLedger().putAll(seg.ledger());
+        }
+        return s;
+    }
+}
@@ -0,0 +1,67 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.TestStates;
+import com.buseiny.app.repository.StateRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyTaskServiceTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-18T03:00:00Z"), ZoneId.of("Asia/Ho_Chi_Minh"));
+
+    @TempDir
+    Path dir;
+
+    private StateRepository repo;
+    private StateService state;
+    private DailyTaskService tasks;
+
+    @BeforeEach
+    void start() throws IOException {
+        repo = TestStates.repository(dir, CLOCK, 500);
+        state = new StateService(repo, new ClockService(CLOCK), Runnable::run, new ObjectMapper().registerModule(new JavaTimeModule()));
+        TestStates.set(state, "queueSize", 64);
+        state.startCommands();
+        tasks = new DailyTaskService(state);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        state.stopCommands();
+        repo.close();
+    }
+
+    @Test
+    void recheckingDoneTaskCommitsNothing() throws Exception {
+        tasks.checkGenericTask("activity-2").get();
+        var view = state.getState();
+        assertTrue(view.getAnna().getDaily().get("2026-10-18").getChecks().contains("activity-2"));
+        assertEquals(1, view.getAnna().getBalance());
+
+        tasks.checkGenericTask("activity-2").get();
+        assertEquals(view.getJournalSeq(), state.getState().getJournalSeq());
+        assertSame(view, state.getState());
+        assertEquals(1, state.getState().getAnna().getBalance());
+    }
+
+    @Test
+    void addingMinutesCommitsTheDay() throws Exception {
+        tasks.addMinutesByTaskId("activity-1", 20).get();
+        long seq = state.getState().getJournalSeq();
+        tasks.addMinutesByTaskId("activity-1", 20).get();
+        assertEquals(seq + 1, state.getState().getJournalSeq());
+        assertEquals(40, state.getState().getAnna().getDaily().get("2026-10-18").getMinutes().get("activity-1"));
+    }
+}
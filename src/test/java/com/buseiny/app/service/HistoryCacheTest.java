@@ -0,0 +1,76 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.AppState;
+import com.buseiny.app.model.OneTimeGoal;
+import com.buseiny.app.model.StateSection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryCacheTest {
+
+    private static final LocalDate LEDGER_SINCE = LocalDate.of(2026, 6, 1);
+    private static final LocalDate AUGUST = LocalDate.of(2026, 8, 1);
+    private static final LocalDate MAY = LocalDate.of(2026, 5, 1);
+
+    private final HistoryCache cache = new HistoryCache(8);
+
+    @BeforeEach
+    void start() {
+        cache.update(view(1, goal("a", 5, null), goal("b", 10, null)), Set.of());
+        cache.putMonth(AUGUST, 1, month(AUGUST));
+        cache.putMonth(MAY, 1, month(MAY));
+    }
+
+    @Test
+    void completionOnLedgerDayKeepsClosedMonths() {
+        cache.update(view(2, goal("a", 5, LocalDateTime.of(2026, 10, 18, 9, 0)), goal("b", 10, null)), Set.of(StateSection.GOALS));
+        assertNotNull(cache.month(AUGUST, 2));
+        assertNotNull(cache.month(MAY, 2));
+    }
+
+    @Test
+    void completionBeforeLedgerDropsItsMonthOnly() {
+        cache.update(view(2, goal("a", 5, null), goal("b", 10, LocalDateTime.of(2026, 5, 20, 9, 0))), Set.of(StateSection.GOALS));
+        assertNull(cache.month(MAY, 2));
+        assertNotNull(cache.month(AUGUST, 2));
+    }
+
+    @Test
+    void redefinedGoalsDropEverything() {
+        cache.update(view(2, goal("a", 7, null), goal("b", 10, null)), Set.of(StateSection.GOALS));
+        assertNull(cache.month(AUGUST, 2));
+        assertNull(cache.month(MAY, 2));
+    }
+
+    @Test
+    void removedCompletionDropsEverything() {
+        cache.update(view(2, goal("a", 5, LocalDateTime.of(2026, 10, 18, 9, 0)), goal("b", 10, null)), Set.of(StateSection.GOALS));
+        cache.update(view(3, goal("a", 5, null), goal("b", 10, null)), Set.of(StateSection.GOALS));
+        assertNull(cache.month(AUGUST, 3));
+    }
+
+    private static AppState view(long version, OneTimeGoal... goals) {
+        var s = new AppState();
+        s.setInstalledAt(LEDGER_SINCE.atTime(8, 0));
+        s.getAnna().setLedgerSince(LEDGER_SINCE);
+        s.setGoals(List.of(goals));
+        s.setJournalSeq(version);
+        return s;
+    }
+
+    private static OneTimeGoal goal(String id, int reward, LocalDateTime completedAt) {
+        return new OneTimeGoal(id, "Goal " + id, reward, completedAt);
+    }
+
+    private static HistoryDTO.MonthHistory month(LocalDate first) {
+        return new HistoryDTO.MonthHistory(first.getYear(), first.getMonthValue(), List.of());
+    }
+}
@@ -0,0 +1,160 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.TestStates;
+import com.buseiny.app.dto.AdminDayUpsertNewRequest;
+import com.buseiny.app.dto.HistoryDTO;
+import com.buseiny.app.model.AppState;
+import com.buseiny.app.model.DailyTaskDef;
+import com.buseiny.app.model.DailyTaskKind;
+import com.buseiny.app.model.WeekSummary;
+import com.buseiny.app.repository.StateRepository;
+import com.buseiny.app.util.SimulatedClock;
+import com.buseiny.app.util.TimeUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A recalculation resumed from a replay checkpoint must leave the same balance, ledger and week
+ * summaries as one replayed from the first recorded date.
+ */
+class HistoryRecalcTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    // installed on a Monday: the ledger starts that day, weekly results a week later
+    private static final LocalDateTime INSTALLED = LocalDateTime.of(2026, 6, 1, 8, 0);
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 5, 13);
+    private static final LocalDate LAST_DAY = LocalDate.of(2026, 10, 16);
+
+    @TempDir
+    Path dir;
+
+    private StateRepository repo;
+    private StateService state;
+    private HistoryService history;
+
+    private record Outcome(int balance, int ledgerOpening, Map<String, List<HistoryDTO.Item>> ledger,
+                           Map<String, WeekSummary> weeks, Map<String, Integer> checkpoints) {}
+
+    @BeforeEach
+    void start() throws IOException {
+        var clock = new SimulatedClock(INSTALLED.atZone(ZONE).toInstant(), 0, ZONE);
+        repo = TestStates.repository(dir, clock, 500);
+        clock.advance(Duration.between(INSTALLED, LocalDateTime.of(2026, 10, 18, 10, 0)));
+
+        var clockService = new ClockService(clock);
+        state = new StateService(repo, clockService, Runnable::run, new ObjectMapper().registerModule(new JavaTimeModule()));
+        TestStates.set(state, "queueSize", 64);
+        state.startCommands();
+        history = new HistoryService(state, clockService, new ObjectMapper());
+        TestStates.set(history, "cacheSize", 16);
+        history.startCache();
+
+        // five months of logs around the weekly goal, the first weeks before the ledger starts
+        var random = new Random(20);
+        var days = new ArrayList<AdminDayUpsertNewRequest>();
+        for (LocalDate d = FIRST_DAY; !d.isAfter(LAST_DAY); d = d.plusDays(1)) {
+            if (random.nextInt(7) == 0) continue;
+            days.add(day(d, 30 + random.nextInt(90), random.nextBoolean()));
+        }
+        history.adminUpsertDaysAndRecalc(days);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        state.stopCommands();
+        repo.close();
+    }
+
+    @Test
+    void editsInFirstWeeks() throws IOException {
+        // the first week has no checkpoint at or before it; the second starts at the earliest one
+        assertNull(view().replayCheckpoint(TimeUtil.weekStartMonday(FIRST_DAY)));
+        assertResumeMatchesFullReplay(FIRST_DAY.plusDays(1));
+        assertResumeMatchesFullReplay(FIRST_DAY.plusDays(6));
+    }
+
+    @Test
+    void editsMidHistory() throws IOException {
+        assertResumeMatchesFullReplay(INSTALLED.toLocalDate().plusDays(2)); // week the ledger starts in
+        assertResumeMatchesFullReplay(LocalDate.of(2026, 8, 5));
+        assertResumeMatchesFullReplay(LocalDate.of(2026, 8, 9)); // Sunday closing a week
+        assertResumeMatchesFullReplay(LocalDate.of(2026, 10, 14)); // current week
+    }
+
+    @Test
+    void editsAfterTaskDefinitionChange() throws IOException {
+        state.setDailyTasks(List.of(
+                DailyTaskDef.create("activity-1", "Daily minutes #1", DailyTaskKind.MINUTES, 3, 45, 300, true, 1),
+                DailyTaskDef.create("activity-2", "Daily check #1", DailyTaskKind.CHECK, 2, null, null, true, 3)));
+        var date = LocalDate.of(2026, 7, 1);
+        assertNull(view().replayCheckpoint(TimeUtil.weekStartMonday(date)));
+        history.adminUpsertDayAndRecalcNew(flipped(date)); // replays everything and takes the checkpoints again
+
+        assertResumeMatchesFullReplay(LocalDate.of(2026, 7, 2));
+        assertResumeMatchesFullReplay(LocalDate.of(2026, 9, 16));
+    }
+
+    // edits the day resuming from a checkpoint, applies the same edit from the first recorded date, and compares
+    private void assertResumeMatchesFullReplay(LocalDate date) throws IOException {
+        var edit = flipped(date);
+        var week = TimeUtil.weekStartMonday(date);
+        boolean resumes = view().replayCheckpoint(week) != null;
+        var before = outcome();
+        history.adminUpsertDayAndRecalcNew(edit);
+        var resumed = outcome();
+        if (resumes) assertNotEquals(before, resumed, "edit of " + date + " changed nothing");
+
+        state.mutate("test", () -> {
+            state.getState().clearReplayCheckpoints();
+            return null;
+        });
+        history.adminUpsertDayAndRecalcNew(edit);
+        assertEquals(outcome(), resumed, "recalc from " + week);
+        assertEquals(resumed.ledgerOpening() + resumed.ledger().values().stream()
+                .flatMap(List::stream).mapToInt(HistoryDTO.Item::points).sum(), resumed.balance());
+    }
+
+    private Outcome outcome() {
+        var s = view();
+        var u = s.getAnna();
+        return new Outcome(u.getBalance(), u.getLedgerOpening(), new TreeMap<>(u.getLedger()),
+                new TreeMap<>(s.getWeekSummaries()), new TreeMap<>(s.getReplayCheckpoints()));
+    }
+
+    private AppState view() {
+        return state.getState();
+    }
+
+    // the day with the minutes task and the check task each done if they were not, and undone if they were
+    private AdminDayUpsertNewRequest flipped(LocalDate date) {
+        var s = view();
+        var log = s.getAnna().getDaily().get(date);
+        int minutes = log == null ? 0 : log.getMinutes().getOrDefault("activity-1", 0);
+        boolean done = minutes >= s.taskIndex().get("activity-1").minutesPerDay();
+        return day(date, done ? 0 : 90, log == null || !log.getChecks().contains("activity-2"));
+    }
+
+    private static AdminDayUpsertNewRequest day(LocalDate date, int minutes, boolean check) {
+        return new AdminDayUpsertNewRequest(date.toString(), Map.of("activity-1", minutes),
+                check ? Set.of("activity-2") : Set.of());
+    }
+}
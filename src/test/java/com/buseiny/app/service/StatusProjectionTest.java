@@ -0,0 +1,71 @@
+package com.buseiny.app.service;
+
+import com.buseiny.app.TestStates;
+import com.buseiny.app.repository.StateRepository;
+import com.buseiny.app.util.SimulatedClock;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusProjectionTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+
+    @TempDir
+    Path dir;
+
+    // Tuesday evening, so the rollover below stays in the week
+    private final SimulatedClock clock = new SimulatedClock(LocalDateTime.of(2026, 10, 13, 22, 0).atZone(ZONE).toInstant(), 0, ZONE);
+    private StateRepository repo;
+    private StateService state;
+
+    @BeforeEach
+    void start() throws IOException {
+        repo = TestStates.repository(dir, clock, 500);
+        state = new StateService(repo, new ClockService(clock), Runnable::run, new ObjectMapper().registerModule(new JavaTimeModule()));
+        TestStates.set(state, "queueSize", 64);
+        state.startCommands();
+        state.processDayBoundaries();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        state.stopCommands();
+        repo.close();
+    }
+
+    @Test
+    void statusIsServedFromProjection() throws IOException {
+        assertSame(state.statusJson(), state.statusJson());
+    }
+
+    @Test
+    void rolloverWithoutChangesPublishesNewDay() throws Exception {
+        new DailyTaskService(state).checkGenericTask("activity-2").get();
+        assertTrue(checked());
+        long seq = state.getState().getJournalSeq();
+
+        // the task was done yesterday, so no streak is reset and nothing is committed
+        clock.advance(Duration.ofHours(4));
+        state.processDayBoundaries();
+
+        assertEquals(seq, state.getState().getJournalSeq(), "rollover committed changes");
+        assertFalse(checked());
+        assertSame(state.statusJson(), state.statusJson());
+    }
+
+    private boolean checked() throws IOException {
+        return state.status().tasks().stream().filter(t -> t.id().equals("activity-2")).findFirst().orElseThrow().todayDone();
+    }
+}